@@ -0,0 +1,23 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// 基准测试用的Lox程序，放在resources/corpus下
+final class Corpus {
+  private Corpus() {}
+
+  static String load(String name) {
+    try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name + ".lox")) {
+      if (in == null) {
+        throw new IllegalArgumentException("No corpus program '" + name + "'.");
+      }
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
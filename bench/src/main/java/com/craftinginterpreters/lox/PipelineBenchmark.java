@@ -0,0 +1,115 @@
+package com.craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// 解释器各阶段的吞吐量。每个阶段的输入都在Setup中由前面的阶段准备好，
+// 所以每个@Benchmark只测量它自己的阶段
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+  @Param({"fib", "binary_trees", "methods", "strings", "closures", "loops", "points"})
+  public String program;
+
+  private String source;
+  private List<Token> tokens;
+  private List<Stmt> statements;
+  private Program compiled;
+  // 未经改写的语法树及其解析结果，以及由它编码的紧凑AST
+  private Program resolved;
+  private Program compact;
+  private Diagnostics diagnostics;
+  private OutputSink output;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    source = Corpus.load(program);
+    diagnostics = new Diagnostics(new PrintStream(OutputStream.nullOutputStream()));
+    tokens = new Scanner(source, diagnostics).scanTokens();
+    statements = new Parser(tokens, diagnostics, false).parse();
+    Map<Expr, Integer> locals = new HashMap<>();
+    new Resolver(locals, diagnostics).resolve(statements);
+    if (diagnostics.hadError()) {
+      throw new IllegalStateException("Corpus program '" + program + "' does not compile.");
+    }
+    resolved = new Program(statements, locals, true);
+    compact = new Program(AstArena.encode(resolved));
+    // 执行的是另一份经过Optimizer改写的语法树，resolve()仍然使用原来的
+    List<Stmt> optimized = new Parser(tokens, diagnostics, false).parse();
+    Map<Expr, Integer> optimizedLocals = new HashMap<>();
+    new Resolver(optimizedLocals, diagnostics).resolve(optimized);
+    if (Optimizer.ENABLED) {
+      new Optimizer(optimizedLocals, false).optimize(optimized);
+    }
+    compiled = new Program(optimized, optimizedLocals, true);
+    output = new OutputSink.Stream(OutputStream.nullOutputStream(),
+        OutputSink.FlushPolicy.ON_SIZE, OutputSink.DEFAULT_LIMIT);
+  }
+
+  @Benchmark
+  public List<Token> scan() {
+    return new Scanner(source, diagnostics).scanTokens();
+  }
+
+  @Benchmark
+  public List<Stmt> parse() {
+    return new Parser(tokens, diagnostics, false).parse();
+  }
+
+  @Benchmark
+  public Map<Expr, Integer> resolve() {
+    Map<Expr, Integer> locals = new HashMap<>();
+    new Resolver(locals, diagnostics).resolve(statements);
+    return locals;
+  }
+
+  // 每次用新的解释器，全局变量不会在两次执行之间残留
+  @Benchmark
+  public boolean interpret() {
+    Interpreter interpreter = new Interpreter(diagnostics, false);
+    interpreter.setOutput(output);
+    boolean succeeded = interpreter.interpret(compiled);
+    if (!succeeded) {
+      throw new IllegalStateException("Corpus program '" + program + "' failed.");
+    }
+    return succeeded;
+  }
+
+  @Benchmark
+  public AstArena encode() {
+    return AstArena.encode(resolved);
+  }
+
+  // 直接执行紧凑AST，对比interpret（加-Dlox.optimize=false时是同一个程序未经改写的语法树）
+  @Benchmark
+  public boolean interpretCompact() {
+    Interpreter interpreter = new Interpreter(diagnostics, false);
+    interpreter.setOutput(output);
+    boolean succeeded = interpreter.interpret(compact);
+    if (!succeeded) {
+      throw new IllegalStateException("Corpus program '" + program + "' failed.");
+    }
+    return succeeded;
+  }
+}
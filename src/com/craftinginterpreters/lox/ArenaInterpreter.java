@@ -0,0 +1,381 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.AstArena.*;
+
+// 直接执行AstArena中的节点，每个Interpreter有一个。当前环境、全局变量、预算和输出都是Interpreter的，
+// 运算也使用Interpreter中的实现，因此结果和错误信息与执行语法树时相同，两种表示的函数可以互相调用。
+// 节点的操作数布局见AstArena。执行时只读取标记的类型、名字和行号，报错时才创建Token
+final class ArenaInterpreter {
+  private final Interpreter host;
+
+  ArenaInterpreter(Interpreter host) {
+    this.host = host;
+  }
+
+  // 在当前环境中执行顶层语句
+  void execute(AstArena arena) {
+    int[] code = arena.code;
+    int count = code[arena.root + 1];
+    for (int i = 0; i < count; i++) {
+      execute(arena, code[arena.root + 2 + i]);
+    }
+  }
+
+  // 在已定义好参数的环境中执行FUNCTION节点的函数体
+  void executeBody(AstArena arena, int function, Environment environment) {
+    executeList(arena, function + 3 + arena.code[function + 2], environment);
+  }
+
+  // list指向语句个数，后面是各条语句
+  private void executeList(AstArena arena, int list, Environment environment) {
+    Environment previous = host.environment;
+    try {
+      host.environment = environment;
+      int[] code = arena.code;
+      int count = code[list];
+      for (int i = 1; i <= count; i++) {
+        execute(arena, code[list + i]);
+      }
+    }
+    // 即使抛出异常，也会恢复环境
+    finally {
+      host.environment = previous;
+    }
+  }
+
+  private void execute(AstArena arena, int node) {
+    int[] code = arena.code;
+    switch (code[node]) {
+      case BLOCK:
+        host.allocate(null, ExecutionBudget.ENVIRONMENT_BYTES);
+        executeList(arena, node + 1, new Environment(host.environment));
+        return;
+      case CLASS:
+        executeClass(arena, node);
+        return;
+      case EXPRESSION: {
+        Object value = evaluate(arena, code[node + 1]);
+        if (host.isPrompt) {
+          host.print(value);
+        }
+        return;
+      }
+      case FUNCTION: {
+        LoxFunction function = new LoxFunction(arena, node, host.environment, false);
+        allocate(arena, code[node + 1], ExecutionBudget.FUNCTION_BYTES);
+        host.environment.define(arena.name(code[node + 1]), function);
+        return;
+      }
+      case IF:
+        if (host.isTruthy(evaluate(arena, code[node + 1]))) {
+          execute(arena, code[node + 2]);
+        }
+        else if (code[node + 3] >= 0) {
+          execute(arena, code[node + 3]);
+        }
+        return;
+      case PRINT:
+        host.print(evaluate(arena, code[node + 1]));
+        return;
+      case RETURN: {
+        Object value = code[node + 2] < 0 ? null : evaluate(arena, code[node + 2]);
+        if (LoxMetrics.ENABLED) {
+          LoxMetrics.controlFlowExceptions.increment();
+        }
+        throw new Return(value);
+      }
+      case VAR: {
+        Object value = code[node + 2] < 0 ? Interpreter.uninitialized : evaluate(arena, code[node + 2]);
+        allocate(arena, code[node + 1], ExecutionBudget.VARIABLE_BYTES);
+        host.environment.define(arena.name(code[node + 1]), value);
+        return;
+      }
+      case WHILE:
+        executeWhile(arena, node);
+        return;
+      case BREAK:
+        if (LoxMetrics.ENABLED) {
+          LoxMetrics.controlFlowExceptions.increment();
+        }
+        throw new BreakException(arena.token(code[node + 1]), "encountered break!");
+      case IMPORT:
+        ((LoxModule)arena.constants[code[node + 2]]).bind(host.globals);
+        return;
+      default:
+        throw new IllegalStateException("Not a statement: " + code[node]);
+    }
+  }
+
+  private void executeClass(AstArena arena, int node) {
+    int[] code = arena.code;
+    Environment environment = host.environment;
+    String name = arena.name(code[node + 1]);
+    environment.define(name, null);
+    Map<String, LoxFunction> methods = new HashMap<>();
+    int count = code[node + 2];
+    for (int i = 0; i < count; i++) {
+      int method = code[node + 3 + i];
+      String methodName = arena.name(code[method + 1]);
+      methods.put(methodName, new LoxFunction(arena, method, environment, methodName.equals("init")));
+    }
+    environment.assign(arena.token(code[node + 1]), new LoxClass(name, methods));
+  }
+
+  private void executeWhile(AstArena arena, int node) {
+    int[] code = arena.code;
+    int keyword = code[node + 1];
+    ShadowStack stack = host.stack();
+    while (host.isTruthy(evaluate(arena, code[node + 2]))) {
+      try {
+        execute(arena, code[node + 3]);
+        // 循环回边是安全点
+        host.safepoint(null);
+      }
+      catch (BreakException e) {
+        break;
+      }
+      catch (RuntimeError error) {
+        // 循环体和安全点中没有位置信息的错误报告在循环处
+        if (error.token == null) {
+          throw error.at(arena.token(keyword));
+        }
+        throw error;
+      }
+      if (stack != null) {
+        stack.line(arena.line(keyword));
+      }
+    }
+  }
+
+  // 记录一次分配，超出内存配额时才为token创建Token
+  private void allocate(AstArena arena, int token, long bytes) {
+    try {
+      host.allocate(null, bytes);
+    }
+    catch (RuntimeError error) {
+      if (error.token == null) {
+        throw error.at(arena.token(token));
+      }
+      throw error;
+    }
+  }
+
+  private Object evaluate(AstArena arena, int node) {
+    int[] code = arena.code;
+    switch (code[node]) {
+      case LITERAL:
+        return arena.constants[code[node + 1]];
+      case VARIABLE:
+        return variable(arena, node);
+      case ASSIGN:
+        return assign(arena, node);
+      case BINARY: {
+        Object left = evaluate(arena, code[node + 2]);
+        Object right = evaluate(arena, code[node + 3]);
+        TokenType operator = arena.type(code[node + 1]);
+        try {
+          if (left instanceof Double && right instanceof Double) {
+            return host.numberBinary(operator, (double)left, (double)right);
+          }
+          return host.genericBinary(operator, left, right);
+        }
+        catch (RuntimeError error) {
+          if (error.token == null) {
+            throw error.at(arena.token(code[node + 1]));
+          }
+          throw error;
+        }
+      }
+      case LOGICAL: {
+        Object left = evaluate(arena, code[node + 2]);
+        // 对于逻辑运算符，先计算左操作数，判断是否短路
+        if (arena.type(code[node + 1]) == TokenType.OR ? host.isTruthy(left) : !host.isTruthy(left)) {
+          return left;
+        }
+        return evaluate(arena, code[node + 3]);
+      }
+      case UNARY: {
+        Object right = evaluate(arena, code[node + 2]);
+        if (arena.type(code[node + 1]) == TokenType.BANG) {
+          return !host.isTruthy(right);
+        }
+        if (!(right instanceof Double)) {
+          host.checkNumberOperand(arena.token(code[node + 1]), right);
+        }
+        return -(double)right;
+      }
+      case CALL:
+        return call(arena, node);
+      case GET: {
+        Object object = evaluate(arena, code[node + 2]);
+        if (LoxMetrics.ENABLED) {
+          LoxMetrics.propertyLookups.increment();
+        }
+        if (object instanceof LoxInstance) {
+          return ((LoxInstance)object).get(arena.token(code[node + 1]));
+        }
+        if (object instanceof NativeObject) {
+          return ((NativeObject)object).get(arena.token(code[node + 1]));
+        }
+        throw new RuntimeError(arena.token(code[node + 1]), "Only instances have properties.");
+      }
+      case SET: {
+        Object object = evaluate(arena, code[node + 2]);
+        if (!(object instanceof LoxInstance)) {
+          throw new RuntimeError(arena.token(code[node + 1]), "Only instances have fields.");
+        }
+        Object value = evaluate(arena, code[node + 3]);
+        if (((LoxInstance)object).set(arena.name(code[node + 1]), value)) {
+          allocate(arena, code[node + 1], ExecutionBudget.FIELD_BYTES);
+        }
+        return value;
+      }
+      case THIS:
+        if (code[node + 2] < 0) {
+          return host.globals.get(arena.token(code[node + 1]));
+        }
+        return host.environment.getAt(code[node + 2], "this");
+      case COMMA: {
+        Object value = null;
+        int count = code[node + 1];
+        for (int i = 0; i < count; i++) {
+          value = evaluate(arena, code[node + 2 + i]);
+        }
+        return value;
+      }
+      case CONDITIONAL:
+        if (host.isTruthy(evaluate(arena, code[node + 1]))) {
+          return evaluate(arena, code[node + 2]);
+        }
+        return evaluate(arena, code[node + 3]);
+      default:
+        throw new IllegalStateException("Not an expression: " + code[node]);
+    }
+  }
+
+  private Object variable(AstArena arena, int node) {
+    int[] code = arena.code;
+    int distance = code[node + 2];
+    Object value;
+    if (distance >= 0) {
+      value = host.environment.getAt(distance, arena.name(code[node + 1]));
+    }
+    else {
+      GlobalCell cell = host.globals.cell(code[node + 3], arena.name(code[node + 1]));
+      if (cell == null) {
+        // 变量未定义，报错
+        cell = host.globals.cell(arena.token(code[node + 1]));
+      }
+      value = cell.value;
+      if (value instanceof LoxModule) {
+        // 导入后第一次用到模块的变量，先执行模块
+        value = ((LoxModule)value).force(host, arena.token(code[node + 1]));
+      }
+    }
+    if (value == Interpreter.uninitialized) {
+      throw new RuntimeError(arena.token(code[node + 1]), "Variable must be initialized before use");
+    }
+    return value;
+  }
+
+  private Object assign(AstArena arena, int node) {
+    int[] code = arena.code;
+    Object value = evaluate(arena, code[node + 2]);
+    int distance = code[node + 3];
+    if (distance >= 0) {
+      host.environment.assignAt(distance, arena.name(code[node + 1]), value);
+      return value;
+    }
+    GlobalCell cell = host.globals.cell(code[node + 4], arena.name(code[node + 1]));
+    if (cell == null) {
+      // 赋值操作不允许创建新变量，assign会报错
+      host.globals.assign(arena.token(code[node + 1]), value);
+      return value;
+    }
+    // 变量仍绑定在模块上时先执行模块，免得它之后覆盖这次赋值
+    if (cell.value instanceof LoxModule) {
+      ((LoxModule)cell.value).force(host, arena.token(code[node + 1]));
+    }
+    cell.value = value;
+    return value;
+  }
+
+  private Object call(AstArena arena, int node) {
+    int[] code = arena.code;
+    Object callee = evaluate(arena, code[node + 2]);
+
+    // 参数不多于三个时放在局部变量中，通过定长的入口调用，不创建参数列表
+    int count = code[node + 4];
+    int first = node + 5;
+    Object a = null;
+    Object b = null;
+    Object c = null;
+    Object[] arguments = null;
+    if (count > 3) {
+      arguments = new Object[count];
+      for (int i = 0; i < count; i++) {
+        arguments[i] = evaluate(arena, code[first + i]);
+      }
+    }
+    else {
+      if (count > 0) {
+        a = evaluate(arena, code[first]);
+      }
+      if (count > 1) {
+        b = evaluate(arena, code[first + 1]);
+      }
+      if (count > 2) {
+        c = evaluate(arena, code[first + 2]);
+      }
+    }
+
+    int paren = code[node + 1];
+    if (!(callee instanceof LoxCallable)) {
+      throw new RuntimeError(arena.token(paren), "Can only call functions and classes.");
+    }
+    LoxCallable function = (LoxCallable)callee;
+    if (count != function.arity()) {
+      throw new RuntimeError(arena.token(paren), "Expected " + function.arity() +
+              " arguments but got " + count + ".");
+    }
+    ShadowStack stack = host.stack();
+    if (stack != null) {
+      stack.line(arena.line(paren));
+    }
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.functionCalls.increment();
+    }
+    try {
+      // 与Interpreter.visitCallExpr一样，Java函数使用调用处缓存的重载
+      if (function instanceof JavaFunction) {
+        if (arguments == null) {
+          arguments = count == 0 ? new Object[0]
+              : count == 1 ? new Object[] {a} : count == 2 ? new Object[] {a, b} : new Object[] {a, b, c};
+        }
+        return ((JavaFunction)function).call(arena, code[node + 3], arguments);
+      }
+      switch (count) {
+        case 0:
+          return function.call0(host);
+        case 1:
+          return function.call1(host, a);
+        case 2:
+          return function.call2(host, a, b);
+        case 3:
+          return function.call3(host, a, b, c);
+        default:
+          return function.call(host, arguments);
+      }
+    }
+    catch (RuntimeError error) {
+      // 本地函数抛出的错误没有位置信息，使用调用处的位置
+      if (error.token == null) {
+        throw error.at(arena.token(paren));
+      }
+      throw error;
+    }
+  }
+}
@@ -0,0 +1,407 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 紧凑的语法树：一个程序的所有节点连续保存在一个int数组中，不再为每个节点、列表和标记创建对象。
+// 节点用它在code中的下标表示，code[node]是节点种类，后面是它的操作数：子节点的下标、
+// 标记表的下标、常量池的下标、作用域距离。子节点先于父节点写入，列表写成个数加各个元素。
+// 标记只保存类型、行号和名字（名字放在常量池中，同名的标识符共用一个String），
+// 报错或调用需要Token的接口时才创建Token对象，并缓存起来。由ArenaInterpreter直接执行
+final class AstArena {
+  // 节点种类和操作数布局
+  static final int LITERAL = 0;      // 常量
+  static final int VARIABLE = 1;    // 名字标记, 距离（全局变量为-1）, 全局变量名的编号
+  static final int ASSIGN = 2;      // 名字标记, 值, 距离, 全局变量名的编号
+  static final int BINARY = 3;      // 运算符标记, 左, 右
+  static final int LOGICAL = 4;     // 运算符标记, 左, 右
+  static final int UNARY = 5;       // 运算符标记, 操作数
+  static final int CALL = 6;        // 括号标记, 被调用者, 重载缓存槽, 参数个数, 参数...
+  static final int GET = 7;         // 名字标记, 对象
+  static final int SET = 8;         // 名字标记, 对象, 值
+  static final int THIS = 9;        // this标记, 距离
+  static final int COMMA = 10;      // 个数, 表达式...
+  static final int CONDITIONAL = 11; // 条件, 真分支, 假分支
+  static final int BLOCK = 12;      // 个数, 语句...
+  static final int CLASS = 13;      // 名字标记, 方法个数, FUNCTION节点...
+  static final int EXPRESSION = 14; // 表达式
+  static final int FUNCTION = 15;   // 名字标记, 参数个数, 参数标记..., 语句个数, 语句...
+  static final int IF = 16;         // 条件, then分支, else分支（没有时为-1）
+  static final int PRINT = 17;      // 表达式
+  static final int RETURN = 18;     // return标记, 值（没有时为-1）
+  static final int VAR = 19;        // 名字标记, 初始值（没有时为-1）
+  static final int WHILE = 20;      // while标记, 条件, 循环体
+  static final int BREAK = 21;      // break标记
+  static final int IMPORT = 22;     // import标记, 模块常量
+
+  private static final TokenType[] TYPES = TokenType.values();
+
+  final int[] code;
+  // 顶层语句组成的BLOCK节点
+  final int root;
+  // 常量池：字面量、标识符的名字和导入的模块
+  final Object[] constants;
+  // 标记表
+  private final byte[] tokenTypes;
+  private final int[] tokenNames;
+  private final int[] tokenLines;
+  // 用到时才创建的Token，多个线程同时创建时得到的是相同的内容
+  private Token[] tokens;
+  // 调用处缓存的Java函数重载，与Expr.Call.target相同
+  final JavaFunction.Overload[] targets;
+
+  private AstArena(int[] code, int root, Object[] constants, byte[] tokenTypes, int[] tokenNames,
+                   int[] tokenLines, int callCount) {
+    this.code = code;
+    this.root = root;
+    this.constants = constants;
+    this.tokenTypes = tokenTypes;
+    this.tokenNames = tokenNames;
+    this.tokenLines = tokenLines;
+    this.targets = new JavaFunction.Overload[callCount];
+  }
+
+  // 编码一个已经解析过变量（未经Optimizer改写）的程序
+  static AstArena encode(Program program) {
+    Encoder encoder = new Encoder(program.locals);
+    int root = encoder.list(BLOCK, program.statements);
+    return encoder.finish(root);
+  }
+
+  // 标记的名字
+  String name(int token) {
+    return (String)constants[tokenNames[token]];
+  }
+
+  TokenType type(int token) {
+    return TYPES[tokenTypes[token]];
+  }
+
+  int line(int token) {
+    return tokenLines[token];
+  }
+
+  Token token(int index) {
+    Token[] tokens = this.tokens;
+    if (tokens == null) {
+      tokens = this.tokens = new Token[tokenLines.length];
+    }
+    Token token = tokens[index];
+    if (token == null) {
+      token = tokens[index] = new Token(type(index), name(index), null, tokenLines[index]);
+    }
+    return token;
+  }
+
+  // 节点数组和标记表占用的字节数（估计值），不含常量
+  long bytes() {
+    return 4L * code.length + 9L * tokenLines.length + 4L * constants.length + 4L * targets.length;
+  }
+
+  // 后序遍历语法树，把节点追加到code中
+  private static final class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+    private final Map<Expr, Integer> locals;
+    private int[] code = new int[256];
+    private int size = 0;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+    private byte[] tokenTypes = new byte[64];
+    private int[] tokenNames = new int[64];
+    private int[] tokenLines = new int[64];
+    private int tokenCount = 0;
+    private int callCount = 0;
+    // null不能作为HashMap的键
+    private int nullConstant = -1;
+
+    Encoder(Map<Expr, Integer> locals) {
+      this.locals = locals;
+    }
+
+    AstArena finish(int root) {
+      return new AstArena(Arrays.copyOf(code, size), root, constants.toArray(),
+          Arrays.copyOf(tokenTypes, tokenCount), Arrays.copyOf(tokenNames, tokenCount),
+          Arrays.copyOf(tokenLines, tokenCount), callCount);
+    }
+
+    private int encode(Expr expr) {
+      return expr.accept(this);
+    }
+
+    private int encode(Stmt stmt) {
+      return stmt == null ? -1 : stmt.accept(this);
+    }
+
+    // 写入一个节点，返回它的下标
+    private int node(int kind, int... operands) {
+      ensure(1 + operands.length);
+      int node = size;
+      code[size++] = kind;
+      for (int operand : operands) {
+        code[size++] = operand;
+      }
+      return node;
+    }
+
+    private void ensure(int length) {
+      if (size + length > code.length) {
+        code = Arrays.copyOf(code, Math.max(code.length * 2, size + length));
+      }
+    }
+
+    // 先编码各个元素，再写入个数和它们的下标
+    private int list(int kind, List<? extends Stmt> statements) {
+      int[] items = new int[statements.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = encode(statements.get(i));
+      }
+      return listNode(kind, new int[0], items);
+    }
+
+    private int listNode(int kind, int[] prefix, int[] items) {
+      int[] operands = Arrays.copyOf(prefix, prefix.length + 1 + items.length);
+      operands[prefix.length] = items.length;
+      System.arraycopy(items, 0, operands, prefix.length + 1, items.length);
+      return node(kind, operands);
+    }
+
+    private int constant(Object value) {
+      if (value == null) {
+        if (nullConstant < 0) {
+          nullConstant = constants.size();
+          constants.add(null);
+        }
+        return nullConstant;
+      }
+      Integer index = constantIndex.get(value);
+      if (index == null) {
+        index = constants.size();
+        constants.add(value);
+        constantIndex.put(value, index);
+      }
+      return index;
+    }
+
+    private int token(Token token) {
+      if (tokenCount == tokenLines.length) {
+        tokenTypes = Arrays.copyOf(tokenTypes, tokenCount * 2);
+        tokenNames = Arrays.copyOf(tokenNames, tokenCount * 2);
+        tokenLines = Arrays.copyOf(tokenLines, tokenCount * 2);
+      }
+      tokenTypes[tokenCount] = (byte)token.type.ordinal();
+      tokenNames[tokenCount] = constant(token.lexeme);
+      tokenLines[tokenCount] = token.line;
+      return tokenCount++;
+    }
+
+    private int distance(Expr expr) {
+      Integer distance = locals.get(expr);
+      return distance == null ? -1 : distance;
+    }
+
+    @Override
+    public Integer visitAssignExpr(Expr.Assign expr) {
+      int value = encode(expr.value);
+      int distance = distance(expr);
+      return node(ASSIGN, token(expr.name), value, distance,
+          distance < 0 ? GlobalEnvironment.slot(expr.name.lexeme) : -1);
+    }
+
+    @Override
+    public Integer visitBinaryExpr(Expr.Binary expr) {
+      int left = encode(expr.left);
+      int right = encode(expr.right);
+      return node(BINARY, token(expr.operator), left, right);
+    }
+
+    @Override
+    public Integer visitCallExpr(Expr.Call expr) {
+      int callee = encode(expr.callee);
+      int[] arguments = new int[expr.arguments.size()];
+      for (int i = 0; i < arguments.length; i++) {
+        arguments[i] = encode(expr.arguments.get(i));
+      }
+      return listNode(CALL, new int[] {token(expr.paren), callee, callCount++}, arguments);
+    }
+
+    @Override
+    public Integer visitGetExpr(Expr.Get expr) {
+      int object = encode(expr.object);
+      return node(GET, token(expr.name), object);
+    }
+
+    // 括号只影响解析，不需要节点
+    @Override
+    public Integer visitGroupingExpr(Expr.Grouping expr) {
+      return encode(expr.expression);
+    }
+
+    @Override
+    public Integer visitLiteralExpr(Expr.Literal expr) {
+      return node(LITERAL, constant(expr.value));
+    }
+
+    @Override
+    public Integer visitLogicalExpr(Expr.Logical expr) {
+      int left = encode(expr.left);
+      int right = encode(expr.right);
+      return node(LOGICAL, token(expr.operator), left, right);
+    }
+
+    @Override
+    public Integer visitSetExpr(Expr.Set expr) {
+      int object = encode(expr.object);
+      int value = encode(expr.value);
+      return node(SET, token(expr.name), object, value);
+    }
+
+    @Override
+    public Integer visitThisExpr(Expr.This expr) {
+      return node(THIS, token(expr.keyword), distance(expr));
+    }
+
+    @Override
+    public Integer visitUnaryExpr(Expr.Unary expr) {
+      int right = encode(expr.right);
+      return node(UNARY, token(expr.operator), right);
+    }
+
+    @Override
+    public Integer visitVariableExpr(Expr.Variable expr) {
+      int distance = distance(expr);
+      return node(VARIABLE, token(expr.name), distance,
+          distance < 0 ? GlobalEnvironment.slot(expr.name.lexeme) : -1);
+    }
+
+    @Override
+    public Integer visitCommaExpr(Expr.Comma expr) {
+      int[] items = new int[expr.commaList.size()];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = encode(expr.commaList.get(i));
+      }
+      return listNode(COMMA, new int[0], items);
+    }
+
+    @Override
+    public Integer visitConditionalExpr(Expr.Conditional expr) {
+      int condition = encode(expr.condition);
+      int trueBranch = encode(expr.trueBranch);
+      int falseBranch = encode(expr.falseBranch);
+      return node(CONDITIONAL, condition, trueBranch, falseBranch);
+    }
+
+    // 紧凑AST不经过Optimizer，以下节点只会出现在改写过的树中，按原表达式编码
+    @Override
+    public Integer visitLocalIncrementExpr(Expr.LocalIncrement expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitLocalCompareExpr(Expr.LocalCompare expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitLocalEqualsExpr(Expr.LocalEquals expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitFieldIncrementExpr(Expr.FieldIncrement expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitScalarNewExpr(Expr.ScalarNew expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitScalarGetExpr(Expr.ScalarGet expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitScalarSetExpr(Expr.ScalarSet expr) {
+      return encode(expr.original);
+    }
+
+    @Override
+    public Integer visitBlockStmt(Stmt.Block stmt) {
+      return list(BLOCK, stmt.statements);
+    }
+
+    @Override
+    public Integer visitClassStmt(Stmt.Class stmt) {
+      int[] methods = new int[stmt.methods.size()];
+      for (int i = 0; i < methods.length; i++) {
+        methods[i] = encode(stmt.methods.get(i));
+      }
+      return listNode(CLASS, new int[] {token(stmt.name)}, methods);
+    }
+
+    @Override
+    public Integer visitExpressionStmt(Stmt.Expression stmt) {
+      return node(EXPRESSION, encode(stmt.expression));
+    }
+
+    @Override
+    public Integer visitFunctionStmt(Stmt.Function stmt) {
+      int[] body = new int[stmt.body.size()];
+      for (int i = 0; i < body.length; i++) {
+        body[i] = encode(stmt.body.get(i));
+      }
+      int[] prefix = new int[2 + stmt.params.size()];
+      prefix[0] = token(stmt.name);
+      prefix[1] = stmt.params.size();
+      for (int i = 0; i < stmt.params.size(); i++) {
+        prefix[2 + i] = token(stmt.params.get(i));
+      }
+      return listNode(FUNCTION, prefix, body);
+    }
+
+    @Override
+    public Integer visitIfStmt(Stmt.If stmt) {
+      int condition = encode(stmt.condition);
+      int thenBranch = encode(stmt.thenBranch);
+      int elseBranch = encode(stmt.elseBranch);
+      return node(IF, condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Integer visitPrintStmt(Stmt.Print stmt) {
+      return node(PRINT, encode(stmt.expression));
+    }
+
+    @Override
+    public Integer visitReturnStmt(Stmt.Return stmt) {
+      int value = stmt.value == null ? -1 : encode(stmt.value);
+      return node(RETURN, token(stmt.keyword), value);
+    }
+
+    @Override
+    public Integer visitVarStmt(Stmt.Var stmt) {
+      int initializer = stmt.initializer == null ? -1 : encode(stmt.initializer);
+      return node(VAR, token(stmt.name), initializer);
+    }
+
+    @Override
+    public Integer visitWhileStmt(Stmt.While stmt) {
+      int condition = encode(stmt.condition);
+      int body = encode(stmt.body);
+      return node(WHILE, token(stmt.keyword), condition, body);
+    }
+
+    @Override
+    public Integer visitBreakStmt(Stmt.Break stmt) {
+      return node(BREAK, token(stmt.keyword));
+    }
+
+    @Override
+    public Integer visitImportStmt(Stmt.Import stmt) {
+      return node(IMPORT, token(stmt.keyword), constant(stmt.module));
+    }
+  }
+}
@@ -0,0 +1,276 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.Map;
+
+// 变量解析之后改写语法树的基类，默认把每个节点原样返回。
+// 节点的字段是final的，子节点变化时重建父节点；列表在原处修改。
+// 重建的Assign在locals中的距离要转移到新节点上
+abstract class AstRewriter implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+  protected final Map<Expr, Integer> locals;
+
+  AstRewriter(Map<Expr, Integer> locals) {
+    this.locals = locals;
+  }
+
+  void rewrite(List<Stmt> statements) {
+    for (int i = 0; i < statements.size(); i++) {
+      statements.set(i, rewrite(statements.get(i)));
+    }
+  }
+
+  Stmt rewrite(Stmt stmt) {
+    return stmt == null ? null : stmt.accept(this);
+  }
+
+  Expr rewrite(Expr expr) {
+    return expr == null ? null : expr.accept(this);
+  }
+
+  void rewriteAll(List<Expr> exprs) {
+    for (int i = 0; i < exprs.size(); i++) {
+      exprs.set(i, rewrite(exprs.get(i)));
+    }
+  }
+
+  // 函数和方法的函数体都经过这里
+  void rewriteFunction(Stmt.Function function) {
+    rewrite(function.body);
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    Expr value = rewrite(expr.value);
+    if (value == expr.value) {
+      return expr;
+    }
+    Expr.Assign assign = new Expr.Assign(expr.name, value);
+    Integer distance = locals.get(expr);
+    if (distance != null) {
+      locals.put(assign, distance);
+    }
+    return assign;
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    Expr left = rewrite(expr.left);
+    Expr right = rewrite(expr.right);
+    if (left == expr.left && right == expr.right) {
+      return expr;
+    }
+    return new Expr.Binary(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitCallExpr(Expr.Call expr) {
+    rewriteAll(expr.arguments);
+    Expr callee = rewrite(expr.callee);
+    if (callee == expr.callee) {
+      return expr;
+    }
+    return new Expr.Call(callee, expr.paren, expr.arguments);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    Expr object = rewrite(expr.object);
+    if (object == expr.object) {
+      return expr;
+    }
+    return new Expr.Get(object, expr.name);
+  }
+
+  @Override
+  public Expr visitGroupingExpr(Expr.Grouping expr) {
+    Expr expression = rewrite(expr.expression);
+    if (expression == expr.expression) {
+      return expr;
+    }
+    return new Expr.Grouping(expression);
+  }
+
+  @Override
+  public Expr visitLiteralExpr(Expr.Literal expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLogicalExpr(Expr.Logical expr) {
+    Expr left = rewrite(expr.left);
+    Expr right = rewrite(expr.right);
+    if (left == expr.left && right == expr.right) {
+      return expr;
+    }
+    return new Expr.Logical(left, expr.operator, right);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    Expr object = rewrite(expr.object);
+    Expr value = rewrite(expr.value);
+    if (object == expr.object && value == expr.value) {
+      return expr;
+    }
+    return new Expr.Set(object, expr.name, value);
+  }
+
+  @Override
+  public Expr visitThisExpr(Expr.This expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitUnaryExpr(Expr.Unary expr) {
+    Expr right = rewrite(expr.right);
+    if (right == expr.right) {
+      return expr;
+    }
+    return new Expr.Unary(expr.operator, right);
+  }
+
+  @Override
+  public Expr visitVariableExpr(Expr.Variable expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitCommaExpr(Expr.Comma expr) {
+    rewriteAll(expr.commaList);
+    return expr;
+  }
+
+  @Override
+  public Expr visitConditionalExpr(Expr.Conditional expr) {
+    Expr condition = rewrite(expr.condition);
+    Expr trueBranch = rewrite(expr.trueBranch);
+    Expr falseBranch = rewrite(expr.falseBranch);
+    if (condition == expr.condition && trueBranch == expr.trueBranch && falseBranch == expr.falseBranch) {
+      return expr;
+    }
+    return new Expr.Conditional(condition, trueBranch, falseBranch);
+  }
+
+  // 改写产生的节点不再被改写
+  @Override
+  public Expr visitLocalIncrementExpr(Expr.LocalIncrement expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLocalCompareExpr(Expr.LocalCompare expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitLocalEqualsExpr(Expr.LocalEquals expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitFieldIncrementExpr(Expr.FieldIncrement expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitScalarNewExpr(Expr.ScalarNew expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitScalarGetExpr(Expr.ScalarGet expr) {
+    return expr;
+  }
+
+  @Override
+  public Expr visitScalarSetExpr(Expr.ScalarSet expr) {
+    return expr;
+  }
+
+  @Override
+  public Stmt visitBlockStmt(Stmt.Block stmt) {
+    rewrite(stmt.statements);
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitClassStmt(Stmt.Class stmt) {
+    for (Stmt.Function method : stmt.methods) {
+      rewriteFunction(method);
+    }
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+    Expr expression = rewrite(stmt.expression);
+    if (expression == stmt.expression) {
+      return stmt;
+    }
+    return new Stmt.Expression(expression);
+  }
+
+  @Override
+  public Stmt visitFunctionStmt(Stmt.Function stmt) {
+    rewriteFunction(stmt);
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitIfStmt(Stmt.If stmt) {
+    Expr condition = rewrite(stmt.condition);
+    Stmt thenBranch = rewrite(stmt.thenBranch);
+    Stmt elseBranch = rewrite(stmt.elseBranch);
+    if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+      return stmt;
+    }
+    return new Stmt.If(condition, thenBranch, elseBranch);
+  }
+
+  @Override
+  public Stmt visitPrintStmt(Stmt.Print stmt) {
+    Expr expression = rewrite(stmt.expression);
+    if (expression == stmt.expression) {
+      return stmt;
+    }
+    return new Stmt.Print(expression);
+  }
+
+  @Override
+  public Stmt visitReturnStmt(Stmt.Return stmt) {
+    Expr value = rewrite(stmt.value);
+    if (value == stmt.value) {
+      return stmt;
+    }
+    return new Stmt.Return(stmt.keyword, value);
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr initializer = rewrite(stmt.initializer);
+    if (initializer == stmt.initializer) {
+      return stmt;
+    }
+    return new Stmt.Var(stmt.name, initializer);
+  }
+
+  @Override
+  public Stmt visitWhileStmt(Stmt.While stmt) {
+    Expr condition = rewrite(stmt.condition);
+    Stmt body = rewrite(stmt.body);
+    if (condition == stmt.condition && body == stmt.body) {
+      return stmt;
+    }
+    return new Stmt.While(stmt.keyword, condition, body);
+  }
+
+  @Override
+  public Stmt visitBreakStmt(Stmt.Break stmt) {
+    return stmt;
+  }
+
+  @Override
+  public Stmt visitImportStmt(Stmt.Import stmt) {
+    return stmt;
+  }
+}
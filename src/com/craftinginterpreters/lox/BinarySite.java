@@ -0,0 +1,40 @@
+package com.craftinginterpreters.lox;
+
+// 一个二元运算表达式见过的操作数类型。第一次求值后根据操作数特化：
+// 两个数字时走只做数值运算的路径，两个字符串相加时直接连接。
+// 特化路径的类型检查失败时退回通用路径并重新观察，反复失败的表达式不再特化。
+// 多个线程可能同时修改状态，但每条特化路径都会先检查类型，任何状态都是安全的
+final class BinarySite {
+  static final int UNINITIALIZED = 0;
+  static final int NUMBERS = 1;
+  static final int STRINGS = 2;
+  static final int GENERIC = 3;
+
+  // 超过这个次数就一直使用通用路径
+  private static final int DEOPTIMIZATION_LIMIT = 8;
+
+  int state = UNINITIALIZED;
+  private int deoptimizations = 0;
+
+  // 在UNINITIALIZED状态下执行通用路径之后调用
+  void specialize(TokenType operator, Object left, Object right) {
+    if (left instanceof Double && right instanceof Double) {
+      state = NUMBERS;
+    }
+    else if (operator == TokenType.PLUS && LoxRope.isString(left) && LoxRope.isString(right)) {
+      state = STRINGS;
+    }
+    else {
+      state = GENERIC;
+    }
+  }
+
+  // 特化路径的类型检查失败
+  void deoptimize() {
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.deoptimizations.increment();
+    }
+    deoptimizations++;
+    state = deoptimizations >= DEOPTIMIZATION_LIMIT ? GENERIC : UNINITIALIZED;
+  }
+}
@@ -0,0 +1,132 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// 一个引擎（或一次编译）的错误报告。代替原先lox中的静态错误标志，
+// 这样多个脚本可以互不干扰地在同一个JVM里运行
+public class Diagnostics {
+  // 一条错误。保存文件、行号和信息本身，打印时才拼成文本
+  static final class Entry {
+    // 另一个文件（例如被导入的模块）的路径，本编译单元中的错误为null
+    final String file;
+    // 没有行号时为0
+    final int line;
+    final String message;
+    final boolean runtime;
+
+    Entry(String file, int line, String message, boolean runtime) {
+      this.file = file;
+      this.line = line;
+      this.message = message;
+      this.runtime = runtime;
+    }
+
+    // 把本编译单元中的错误归到file
+    Entry in(String file) {
+      return this.file != null ? this : new Entry(file, line, message, runtime);
+    }
+
+    // 不带文件名的文本
+    String text() {
+      if (runtime) {
+        return message + "\n[line " + (line == 0 ? "?" : String.valueOf(line)) + "]";
+      }
+      return line == 0 ? message : "[line " + line + "] " + message;
+    }
+
+    @Override
+    public String toString() {
+      return file == null ? text() : file + ": " + text();
+    }
+  }
+
+  // 为null时只收集，不打印
+  private final PrintStream err;
+  // 并行编译时多个线程同时报告错误，以下状态都由this保护
+  private final List<Entry> entries = new ArrayList<>();
+  private boolean hadError = false;
+  private int errorCount = 0;
+  private boolean hadRuntimeError = false;
+
+  public Diagnostics(PrintStream err) {
+    this.err = err;
+  }
+
+  // 只收集错误信息的Diagnostics
+  public Diagnostics() {
+    this(null);
+  }
+
+  void error(int line, String message) {
+    report(line, "", message);
+  }
+
+  void error(Token token, String message) {
+    if (token.type == TokenType.EOF) {
+      report(token.line, " at end", message);
+    }
+    else {
+      report(token.line, " at '" + token.lexeme + "'", message);
+    }
+  }
+
+  // 另一个文件（例如被导入的模块）的编译单元报告的错误，归到file
+  synchronized void error(String file, Entry entry) {
+    emit(entry.in(file));
+    hadError = true;
+    errorCount++;
+  }
+
+  synchronized void runtimeError(RuntimeError error) {
+    // 没有位置信息的错误（例如在顶层代码块中超出内存配额）
+    emit(new Entry(error.file, error.token == null ? 0 : error.token.line, error.getMessage(), true));
+    hadRuntimeError = true;
+  }
+
+  private synchronized void report(int line, String where, String message) {
+    emit(new Entry(null, line, "Error" + where + ": " + message, false));
+    hadError = true;
+    errorCount++;
+  }
+
+  private synchronized void emit(Entry entry) {
+    entries.add(entry);
+    if (err != null) {
+      err.println(entry);
+    }
+  }
+
+  public synchronized boolean hadError() {
+    return hadError;
+  }
+
+  // 累计的编译错误数，交互模式下clearError()不会将其清零
+  public synchronized int errorCount() {
+    return errorCount;
+  }
+
+  public synchronized boolean hadRuntimeError() {
+    return hadRuntimeError;
+  }
+
+  public synchronized List<String> messages() {
+    List<String> messages = new ArrayList<>();
+    for (Entry entry : entries) {
+      messages.add(entry.toString());
+    }
+    return messages;
+  }
+
+  synchronized List<Entry> entries() {
+    return new ArrayList<>(entries);
+  }
+
+  // 交互模式下，一行的编译错误不影响下一行。之前各行的错误信息也一并丢弃，
+  // 否则长时间运行的会话会一直积累它们
+  public synchronized void clearError() {
+    hadError = false;
+    entries.clear();
+  }
+}
@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -8,7 +9,9 @@ import java.util.Set;
 class Environment {
   // 对当前环境的外围环境的引用
   final Environment enclosing;
-  private final Map<String, Object> values = new HashMap<>();
+  private Map<String, Object> values = new HashMap<>();
+  // 是否可能被多个线程访问
+  private boolean shared = false;
 
   // 无参构造函数用于全局作用域环境
   Environment() {
@@ -17,6 +20,9 @@ class Environment {
 
   Environment(Environment enclosing) {
     this.enclosing = enclosing;
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.environmentsAllocated.increment();
+    }
   }
 
   Object get(Token name) {
@@ -47,11 +53,27 @@ class Environment {
     throw new RuntimeError(name, "Undefined variable '" + name + "'.");
   }
 
+  // 按名字查找当前环境中的变量，不存在时返回null
+  Object lookup(String name) {
+    return values.get(name);
+  }
+
   void define(String name, Object value) {
     // 允许用户重定义变量
     values.put(name, value);
   }
 
+  // 在把环境交给另一个线程之前调用：从此环境到全局环境的每一层都改为同步访问。
+  // 只在用到spawn时才需要，单线程脚本仍然使用普通的HashMap
+  void share() {
+    for (Environment environment = this; environment != null; environment = environment.enclosing) {
+      if (!environment.shared) {
+        environment.values = Collections.synchronizedMap(environment.values);
+        environment.shared = true;
+      }
+    }
+  }
+
   Environment ancestor(int distance) {
     Environment environment = this;
     for (int i = 0; i < distance; i++) {
@@ -65,7 +87,7 @@ class Environment {
     return ancestor(distance).values.get(name);
   }
 
-  void assignAt(int distance, Token name, Object value) {
-    ancestor(distance).values.put(name.lexeme, value);
+  void assignAt(int distance, String name, Object value) {
+    ancestor(distance).values.put(name, value);
   }
 }
\ No newline at end of file
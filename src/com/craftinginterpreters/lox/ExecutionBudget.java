@@ -0,0 +1,112 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// 一次执行的资源限制：燃料（安全点的次数）、墙钟期限、内存配额，以及可以从其他线程触发的取消。
+// 解释器在循环回边和函数入口处递减自己的计数器，每用完一批才到这里结算一次；
+// 内存也由解释器先在本地累计，每满一批再计入这里
+public class ExecutionBudget {
+  // 每次结算发放的燃料数
+  static final int BATCH = 1024;
+  static final long UNLIMITED = Long.MAX_VALUE;
+  // 解释器本地累计到这么多字节才结算一次
+  static final int ALLOCATION_BATCH = 64 * 1024;
+
+  // 运行时代替脚本分配的各种对象的估计大小（字节）
+  static final int INSTANCE_BYTES = 64;
+  static final int FIELD_BYTES = 40;
+  static final int ENVIRONMENT_BYTES = 56;
+  static final int VARIABLE_BYTES = 40;
+  static final int FUNCTION_BYTES = 32;
+  static final int STRING_BYTES = 40;
+  static final int ROPE_BYTES = 32;
+  static final int MAP_BYTES = 96;
+  static final int MAP_ENTRY_BYTES = 24;
+  static final int CHANNEL_BYTES = 128;
+  static final int CHANNEL_SLOT_BYTES = 16;
+
+  private final AtomicLong fuel;
+  private final long timeoutNanos;
+  private final long memoryQuota;
+  private final AtomicLong allocated = new AtomicLong();
+  private volatile long deadline = Long.MAX_VALUE;
+  private volatile boolean cancelled = false;
+
+  // 不限燃料和时间，但仍可以取消
+  public ExecutionBudget() {
+    this(UNLIMITED, UNLIMITED, UNLIMITED);
+  }
+
+  public ExecutionBudget(long fuel, long timeoutMillis) {
+    this(fuel, timeoutMillis, UNLIMITED);
+  }
+
+  public ExecutionBudget(long fuel, long timeoutMillis, long memoryQuotaBytes) {
+    this.fuel = new AtomicLong(fuel);
+    this.timeoutNanos = timeoutMillis == UNLIMITED ? UNLIMITED : timeoutMillis * 1_000_000;
+    this.memoryQuota = memoryQuotaBytes;
+  }
+
+  // 执行开始时调用，期限从此刻算起
+  void start() {
+    if (timeoutNanos != UNLIMITED) {
+      deadline = System.nanoTime() + timeoutNanos;
+    }
+  }
+
+  // 宿主可以在任何线程调用，脚本会在下一个安全点停止
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public long remainingFuel() {
+    return Math.max(0, fuel.get());
+  }
+
+  // 到目前为止计入的分配字节数（估计值）
+  public long allocatedBytes() {
+    return allocated.get();
+  }
+
+  // 计入一批分配，超过配额时停止执行
+  void charge(Token token, long bytes) {
+    if (allocated.addAndGet(bytes) > memoryQuota) {
+      throw new ExecutionInterrupted(token, "Memory quota exceeded.");
+    }
+  }
+
+  // 执行结束时计入剩余的零头，不再检查配额
+  void record(long bytes) {
+    allocated.addAndGet(bytes);
+  }
+
+  // 计入解释器用掉的燃料，不检查限制
+  void consume(int used) {
+    if (used > 0 && fuel.get() != UNLIMITED) {
+      fuel.addAndGet(-used);
+    }
+  }
+
+  // 结算上一批用掉的燃料并检查各项限制，返回下一批发放的数量
+  int settle(Token token, int used) {
+    consume(used);
+    if (cancelled) {
+      throw new ExecutionInterrupted(token, "Execution cancelled.");
+    }
+    if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+      throw new ExecutionInterrupted(token, "Execution deadline exceeded.");
+    }
+    long remaining = fuel.get();
+    if (remaining == UNLIMITED) {
+      return BATCH;
+    }
+    if (remaining <= 0) {
+      throw new ExecutionInterrupted(token, "Execution fuel exhausted.");
+    }
+    return (int)Math.min(BATCH, remaining);
+  }
+}
@@ -0,0 +1,13 @@
+package com.craftinginterpreters.lox;
+
+// 执行因燃料耗尽、超时或被取消而停止
+class ExecutionInterrupted extends RuntimeError {
+  ExecutionInterrupted(Token token, String message) {
+    super(token, message);
+  }
+
+  @Override
+  RuntimeError at(Token token) {
+    return new ExecutionInterrupted(token, getMessage());
+  }
+}
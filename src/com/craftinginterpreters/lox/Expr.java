@@ -17,6 +17,13 @@ abstract class Expr {
     R visitVariableExpr(Variable expr);
     R visitCommaExpr(Comma expr);
     R visitConditionalExpr(Conditional expr);
+    R visitLocalIncrementExpr(LocalIncrement expr);
+    R visitLocalCompareExpr(LocalCompare expr);
+    R visitLocalEqualsExpr(LocalEquals expr);
+    R visitFieldIncrementExpr(FieldIncrement expr);
+    R visitScalarNewExpr(ScalarNew expr);
+    R visitScalarGetExpr(ScalarGet expr);
+    R visitScalarSetExpr(ScalarSet expr);
   }
   static class Assign extends Expr {
     Assign(Token name, Expr value) {
@@ -31,6 +38,8 @@ abstract class Expr {
 
     final Token name;
     final Expr value;
+    // 全局变量名的编号，第一次执行时设置
+    int slot = -1;
   }
   static class Binary extends Expr {
     Binary(Expr left, Token operator, Expr right) {
@@ -47,6 +56,7 @@ abstract class Expr {
     final Expr left;
     final Token operator;
     final Expr right;
+    final BinarySite site = new BinarySite();
   }
   static class Call extends Expr {
     Call(Expr callee, Token paren, List<Expr> arguments) {
@@ -63,6 +73,7 @@ abstract class Expr {
     final Expr callee;
     final Token paren;
     final List<Expr> arguments;
+    JavaFunction.Overload target;
   }
   static class Get extends Expr {
     Get(Expr object, Token name) {
@@ -171,6 +182,8 @@ abstract class Expr {
     }
 
     final Token name;
+    // 全局变量名的编号，第一次执行时设置
+    int slot = -1;
   }
   static class Comma extends Expr {
     Comma(List<Expr> commaList) {
@@ -200,6 +213,148 @@ abstract class Expr {
     final Expr trueBranch;
     final Expr falseBranch;
   }
+  static class LocalIncrement extends Expr {
+    LocalIncrement(Token name, int distance, double delta, Expr original) {
+      this.name = name;
+      this.distance = distance;
+      this.delta = delta;
+      this.original = original;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLocalIncrementExpr(this);
+    }
+
+    final Token name;
+    final int distance;
+    final double delta;
+    final Expr original;
+  }
+  static class LocalCompare extends Expr {
+    LocalCompare(Token name, int distance, Token operator, double constant, Expr original) {
+      this.name = name;
+      this.distance = distance;
+      this.operator = operator;
+      this.constant = constant;
+      this.original = original;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLocalCompareExpr(this);
+    }
+
+    final Token name;
+    final int distance;
+    final Token operator;
+    final double constant;
+    final Expr original;
+  }
+  static class LocalEquals extends Expr {
+    LocalEquals(Token left, int leftDistance, Token operator, Token right, int rightDistance, Expr original) {
+      this.left = left;
+      this.leftDistance = leftDistance;
+      this.operator = operator;
+      this.right = right;
+      this.rightDistance = rightDistance;
+      this.original = original;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitLocalEqualsExpr(this);
+    }
+
+    final Token left;
+    final int leftDistance;
+    final Token operator;
+    final Token right;
+    final int rightDistance;
+    final Expr original;
+  }
+  static class FieldIncrement extends Expr {
+    FieldIncrement(Token object, int distance, Token name, double delta, Expr original) {
+      this.object = object;
+      this.distance = distance;
+      this.name = name;
+      this.delta = delta;
+      this.original = original;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitFieldIncrementExpr(this);
+    }
+
+    final Token object;
+    final int distance;
+    final Token name;
+    final double delta;
+    final Expr original;
+  }
+  static class ScalarNew extends Expr {
+    ScalarNew(Token name, Call original, Stmt.Function initializer, List<String> hidden, List<Integer> sources) {
+      this.name = name;
+      this.original = original;
+      this.initializer = initializer;
+      this.hidden = hidden;
+      this.sources = sources;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitScalarNewExpr(this);
+    }
+
+    final Token name;
+    final Call original;
+    final Stmt.Function initializer;
+    final List<String> hidden;
+    final List<Integer> sources;
+  }
+  static class ScalarGet extends Expr {
+    ScalarGet(Token object, int distance, String hidden, ScalarNew site, Expr original) {
+      this.object = object;
+      this.distance = distance;
+      this.hidden = hidden;
+      this.site = site;
+      this.original = original;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitScalarGetExpr(this);
+    }
+
+    final Token object;
+    final int distance;
+    final String hidden;
+    final ScalarNew site;
+    final Expr original;
+  }
+  static class ScalarSet extends Expr {
+    ScalarSet(Token object, int distance, String hidden, Expr value, ScalarNew site, Expr original) {
+      this.object = object;
+      this.distance = distance;
+      this.hidden = hidden;
+      this.value = value;
+      this.site = site;
+      this.original = original;
+    }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+      return visitor.visitScalarSetExpr(this);
+    }
+
+    final Token object;
+    final int distance;
+    final String hidden;
+    final Expr value;
+    final ScalarNew site;
+    final Expr original;
+  }
 
   abstract <R> R accept(Visitor<R> visitor);
 }
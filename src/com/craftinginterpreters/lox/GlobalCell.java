@@ -0,0 +1,14 @@
+package com.craftinginterpreters.lox;
+
+// 一个全局变量的存储单元。定义之后单元格不再改变，重定义只改写其中的值，
+// 所以全局环境可以按变量名的编号缓存它，之后不再按名字查找，见GlobalEnvironment.cell(int, String)
+final class GlobalCell {
+  final String name;
+  // 执行spawn的任务可能在其他线程读写全局变量
+  volatile Object value;
+
+  GlobalCell(String name, Object value) {
+    this.name = name;
+    this.value = value;
+  }
+}
@@ -0,0 +1,86 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 全局作用域：每个变量保存在一个GlobalCell中。
+// 全局变量名在整个JVM中有唯一的编号，表达式只保存编号（编译后不再改变），
+// 每个全局环境按编号缓存自己的单元格。同一个程序在多个全局环境中并发执行时不会改写共享的语法树
+class GlobalEnvironment extends Environment {
+  private static final Map<String, Integer> SLOTS = new ConcurrentHashMap<>();
+  private static final AtomicInteger nextSlot = new AtomicInteger();
+
+  // 只在第一次访问某个变量时查找，可以直接使用并发的表
+  private final Map<String, GlobalCell> cells = new ConcurrentHashMap<>();
+  // 按编号缓存的单元格。只在持有this时扩容和写入，读取不加锁，没读到时再加锁查找
+  private volatile GlobalCell[] slots = new GlobalCell[0];
+
+  // 全局变量名的编号
+  static int slot(String name) {
+    return SLOTS.computeIfAbsent(name, key -> nextSlot.getAndIncrement());
+  }
+
+  // 按编号返回变量的单元格，变量未定义时返回null
+  GlobalCell cell(int slot, String name) {
+    GlobalCell[] slots = this.slots;
+    if (slot < slots.length) {
+      GlobalCell cell = slots[slot];
+      if (cell != null) {
+        return cell;
+      }
+    }
+    return install(slot, name);
+  }
+
+  private synchronized GlobalCell install(int slot, String name) {
+    GlobalCell cell = cells.get(name);
+    if (cell == null) {
+      return null;
+    }
+    GlobalCell[] slots = this.slots;
+    if (slot >= slots.length) {
+      slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+    }
+    slots[slot] = cell;
+    this.slots = slots;
+    return cell;
+  }
+
+  // 返回变量的单元格，变量未定义时报错
+  GlobalCell cell(Token name) {
+    GlobalCell cell = cells.get(name.lexeme);
+    if (cell == null) {
+      throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
+    return cell;
+  }
+
+  @Override
+  Object get(Token name) {
+    return cell(name).value;
+  }
+
+  @Override
+  void assign(Token name, Object value) {
+    GlobalCell cell = cells.get(name.lexeme);
+    if (cell == null) {
+      // 赋值操作不允许创建新变量
+      throw new RuntimeError(name, "Undefined variable '" + name + "'.");
+    }
+    cell.value = value;
+  }
+
+  @Override
+  Object lookup(String name) {
+    GlobalCell cell = cells.get(name);
+    return cell == null ? null : cell.value;
+  }
+
+  // 重定义时改写原来的单元格，已缓存它的表达式能看到新值
+  @Override
+  void define(String name, Object value) {
+    cells.computeIfAbsent(name, key -> new GlobalCell(key, null)).value = value;
+  }
+}
@@ -1,13 +1,10 @@
 package com.craftinginterpreters.lox;
 
-import java.text.DecimalFormat;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ArrayList;
 import java.util.Map;
 
 import static com.craftinginterpreters.lox.TokenType.*;
-import static com.craftinginterpreters.lox.lox.isPrompt;
 
 class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   public Object visitLiteralExpr(Expr.Literal expr) {
@@ -41,7 +38,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     Object value = evaluate(expr.value);
-    ((LoxInstance)object).set(expr.name, value);
+    if (((LoxInstance)object).set(expr.name.lexeme, value)) {
+      allocate(expr.name, ExecutionBudget.FIELD_BYTES);
+    }
     return value;
   }
 
@@ -70,7 +69,26 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   // 对变量表达式求值
   @Override
   public Object visitVariableExpr(Expr.Variable expr) {
-    Object value = lookUpVariable(expr.name, expr);
+    Integer distance = locals.get(expr);
+    Object value;
+    if (distance != null) {
+      value = environment.getAt(distance, expr.name.lexeme);
+    }
+    else {
+      if (expr.slot < 0) {
+        expr.slot = GlobalEnvironment.slot(expr.name.lexeme);
+      }
+      GlobalCell cell = globals.cell(expr.slot, expr.name.lexeme);
+      if (cell == null) {
+        // 变量未定义，报错
+        cell = globals.cell(expr.name);
+      }
+      value = cell.value;
+      if (value instanceof LoxModule) {
+        // 导入后第一次用到模块的变量，先执行模块
+        value = ((LoxModule)value).force(this, expr.name);
+      }
+    }
     if (value == uninitialized) {
       throw new RuntimeError(expr.name, "Variable must be initialized before use");
     }
@@ -91,38 +109,52 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     Object value = evaluate(expr.value);
     Integer distance = locals.get(expr);
     if (distance != null) {
-      environment.assignAt(distance, expr.name, value);
+      environment.assignAt(distance, expr.name.lexeme, value);
     } else {
-      globals.assign(expr.name, value);
+      // 与visitVariableExpr一样按编号取全局变量的单元格
+      if (expr.slot < 0) {
+        expr.slot = GlobalEnvironment.slot(expr.name.lexeme);
+      }
+      GlobalCell cell = globals.cell(expr.slot, expr.name.lexeme);
+      if (cell == null) {
+        // 赋值操作不允许创建新变量，assign会报错
+        globals.assign(expr.name, value);
+        return value;
+      }
+      // 变量仍绑定在模块上时先执行模块，免得它之后覆盖这次赋值
+      if (cell.value instanceof LoxModule) {
+        ((LoxModule)cell.value).force(this, expr.name);
+      }
+      cell.value = value;
     }
     return value;
   }
 
   // 检查操作数
-  private void checkNumberOperand(Token operator, Object operand) {
+  void checkNumberOperand(Token operator, Object operand) {
     if (operand instanceof Double) {
       return;
     }
     throw new RuntimeError(operator, "Operand must be s number.");
   }
 
-  private void checkNumberOperands(Token operator, Object left, Object right) {
-    TokenType type = operator.type;
+  // 没有位置信息，由执行运算的表达式补上
+  private void checkNumberOperands(TokenType type, Object left, Object right) {
       if (left instanceof Double && right instanceof Double) {
         if (type == SLASH && (double)right == 0) {
-          throw new RuntimeError(operator, "Divisor cannot be 0.");
+          throw new RuntimeError("Divisor cannot be 0.");
         }
         return;
       }
-      if (left instanceof String && right instanceof String) {
+      if (LoxRope.isString(left) && LoxRope.isString(right)) {
         return;
       }
       // 除以0的情况
-    throw new RuntimeError(operator, "Operands must be numbers or strings.");
+    throw new RuntimeError("Operands must be numbers or strings.");
   }
 
   // 在lox中，false和nil是假的，其他都是真的
-  private boolean isTruthy(Object object) {
+  boolean isTruthy(Object object) {
     if (object == null) {
       return false;
     }
@@ -139,6 +171,10 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     if (a == null) {
       return false;
     }
+    // String和LoxRope都是lox字符串，按内容比较
+    if (a instanceof CharSequence && b instanceof CharSequence) {
+      return LoxRope.contentEquals((CharSequence)a, (CharSequence)b);
+    }
     return a.equals(b);
   }
 
@@ -148,17 +184,29 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     if (object instanceof Double) {
-      String text = object.toString();
-      // 只显示整数部分
-      if (text.endsWith(".0")) {
-        text = text.substring(0, text.length() - 2);
-      }
-      return text;
+      return NumberFormatter.format((double)object);
     }
 
     return object.toString();
   }
 
+  // 与stringify相同，但直接写入调用者的缓冲区
+  private void stringify(Object object, StringBuilder out) {
+    if (object instanceof Double) {
+      NumberFormatter.format((double)object, out);
+      return;
+    }
+    out.append(object == null ? "nil" : object.toString());
+  }
+
+  // spawn的任务可能同时打印，因此每一行在输出对象上加锁写入
+  void print(Object value) {
+    synchronized (output) {
+      stringify(value, output.buffer());
+      output.endLine();
+    }
+  }
+
   private boolean compareString(TokenType type, Object left, Object right) {
     String s1 = String.valueOf(left), s2 = String.valueOf(right);
     int res = s1.compareTo(s2);
@@ -187,10 +235,6 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     stmt.accept(this);
   }
 
-  void resolve(Expr expr, int depth) {
-    locals.put(expr, depth);
-  }
-
   void executeBlock(List<Stmt> statements, Environment environment) {
     Environment previous = this.environment;
     try {
@@ -206,9 +250,22 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
   }
 
+  // 执行函数体：函数可能来自REPL之前的某一行，因此同时切换到它所属程序的解析结果
+  void executeBlock(List<Stmt> statements, Environment environment, Map<Expr, Integer> locals) {
+    Map<Expr, Integer> previous = this.locals;
+    try {
+      this.locals = locals;
+      executeBlock(statements, environment);
+    }
+    finally {
+      this.locals = previous;
+    }
+  }
+
   @Override
   public Void visitBlockStmt(Stmt.Block stmt) {
     // 创建一个新的环境
+    allocate(null, ExecutionBudget.ENVIRONMENT_BYTES);
     executeBlock(stmt.statements, new Environment(environment));
     return null;
   }
@@ -220,7 +277,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     Map<String, LoxFunction> methods = new HashMap<>();
     for (Stmt.Function method : stmt.methods) {
       // 用户定义的函数是否名为init
-      LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
+      LoxFunction function = new LoxFunction(method, environment, locals, method.name.lexeme.equals("init"));
       methods.put(method.name.lexeme, function);
     }
     LoxClass klass = new LoxClass(stmt.name.lexeme, methods);
@@ -230,19 +287,26 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   @Override
   public Void visitExpressionStmt(Stmt.Expression stmt) {
+    // 交互模式下打印求得的值，不能再求值一次：表达式可能有副作用
+    Object value = evaluate(stmt.expression);
     if (isPrompt) {
-      Object value = evaluate(stmt.expression);
-      System.out.println(stringify(value));
+      print(value);
     }
+    return null;
+  }
 
-    evaluate(stmt.expression);
+  @Override
+  public Void visitImportStmt(Stmt.Import stmt) {
+    // 编译时已经加载了模块，这里只绑定它导出的变量，模块的代码推迟到第一次用到时执行
+    stmt.module.bind(globals);
     return null;
   }
 
   @Override
   public Void visitFunctionStmt(Stmt.Function stmt) {
     // 此处的环境为函数声明时的环境
-    LoxFunction function = new LoxFunction(stmt, environment, false);
+    LoxFunction function = new LoxFunction(stmt, environment, locals, false);
+    allocate(stmt.name, ExecutionBudget.FUNCTION_BYTES);
     environment.define(stmt.name.lexeme, function);
     return null;
   }
@@ -260,7 +324,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
   public Void visitPrintStmt(Stmt.Print stmt) {
     Object value = evaluate(stmt.expression);
-    System.out.println(stringify(value));
+    print(value);
     return null;
   }
 
@@ -271,6 +335,9 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       value = evaluate(stmt.value);
     }
 
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.controlFlowExceptions.increment();
+    }
     throw new Return(value);
   }
 
@@ -282,6 +349,7 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       value = evaluate(stmt.initializer);
     }
 
+    allocate(stmt.name, ExecutionBudget.VARIABLE_BYTES);
     environment.define(stmt.name.lexeme, value);
     return null;
   }
@@ -294,12 +362,27 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       catch (BreakException e) {
         break;
       }
+      catch (RuntimeError error) {
+        // 循环体中没有位置信息的错误（例如代码块超出内存配额）报告在循环处
+        if (error.token == null) {
+          throw error.at(stmt.keyword);
+        }
+        throw error;
+      }
+      // 循环回边是安全点
+      safepoint(stmt.keyword);
+      if (stack != null) {
+        stack.line(stmt.keyword.line);
+      }
     }
     return null;
   }
 
   @Override
   public Void visitBreakStmt(Stmt.Break stmt) {
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.controlFlowExceptions.increment();
+    }
     throw new BreakException(stmt.keyword, "encountered break!");
   }
 
@@ -319,40 +402,214 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     return evaluate(expr.falseBranch);
   }
 
+  // 以下是Optimizer生成的融合节点，值不是数字（或未初始化）时执行原表达式，由它报告错误
+  @Override
+  public Object visitLocalIncrementExpr(Expr.LocalIncrement expr) {
+    Environment scope = environment.ancestor(expr.distance);
+    Object value = scope.getAt(0, expr.name.lexeme);
+    if (!(value instanceof Double)) {
+      return evaluate(expr.original);
+    }
+    Object result = (double)value + expr.delta;
+    scope.assignAt(0, expr.name.lexeme, result);
+    return result;
+  }
+
+  @Override
+  public Object visitLocalCompareExpr(Expr.LocalCompare expr) {
+    Object value = environment.getAt(expr.distance, expr.name.lexeme);
+    if (!(value instanceof Double)) {
+      return evaluate(expr.original);
+    }
+    double left = (double)value;
+    switch (expr.operator.type) {
+      case LESS:
+        return left < expr.constant;
+      case LESS_EQUAL:
+        return left <= expr.constant;
+      case GREATER:
+        return left > expr.constant;
+      case GREATER_EQUAL:
+        return left >= expr.constant;
+      // 与isEqual中的Double.equals一致
+      case EQUAL_EQUAL:
+        return Double.compare(left, expr.constant) == 0;
+      case BANG_EQUAL:
+        return Double.compare(left, expr.constant) != 0;
+    }
+    return evaluate(expr.original);
+  }
+
+  @Override
+  public Object visitLocalEqualsExpr(Expr.LocalEquals expr) {
+    Object left = environment.getAt(expr.leftDistance, expr.left.lexeme);
+    Object right = environment.getAt(expr.rightDistance, expr.right.lexeme);
+    if (left == uninitialized || right == uninitialized) {
+      return evaluate(expr.original);
+    }
+    boolean equal = isEqual(left, right);
+    return expr.operator.type == EQUAL_EQUAL ? equal : !equal;
+  }
+
+  @Override
+  public Object visitFieldIncrementExpr(Expr.FieldIncrement expr) {
+    Object object = environment.getAt(expr.distance, expr.object.lexeme);
+    if (object instanceof LoxInstance) {
+      LoxInstance instance = (LoxInstance)object;
+      Object value = instance.field(expr.name.lexeme);
+      if (value instanceof Double) {
+        if (LoxMetrics.ENABLED) {
+          LoxMetrics.propertyLookups.increment();
+        }
+        Object result = (double)value + expr.delta;
+        instance.set(expr.name.lexeme, result);
+        return result;
+      }
+    }
+    return evaluate(expr.original);
+  }
+
+  // 以下是ScalarReplacer生成的节点。被拆开的变量的值是构造它的ScalarNew节点，字段在同一作用域的隐藏变量中
+  @Override
+  public Object visitScalarNewExpr(Expr.ScalarNew expr) {
+    Object callee = evaluate(expr.original.callee);
+    // 类被重定义了，正常创建对象
+    if (!(callee instanceof LoxClass) || !((LoxClass)callee).isInitializedBy(expr.initializer)) {
+      return evaluate(expr.original);
+    }
+    Object[] arguments = new Object[expr.original.arguments.size()];
+    for (int i = 0; i < arguments.length; i++) {
+      arguments[i] = evaluate(expr.original.arguments.get(i));
+    }
+    for (int i = 0; i < expr.hidden.size(); i++) {
+      allocate(expr.name, ExecutionBudget.VARIABLE_BYTES);
+      environment.define(expr.hidden.get(i), arguments[expr.sources.get(i)]);
+    }
+    return expr;
+  }
+
+  @Override
+  public Object visitScalarGetExpr(Expr.ScalarGet expr) {
+    if (environment.getAt(expr.distance, expr.object.lexeme) != expr.site) {
+      return evaluate(expr.original);
+    }
+    return environment.getAt(expr.distance, expr.hidden);
+  }
+
+  @Override
+  public Object visitScalarSetExpr(Expr.ScalarSet expr) {
+    if (environment.getAt(expr.distance, expr.object.lexeme) != expr.site) {
+      return evaluate(expr.original);
+    }
+    Object value = evaluate(expr.value);
+    environment.ancestor(expr.distance).define(expr.hidden, value);
+    return value;
+  }
+
   public Object visitBinaryExpr(Expr.Binary expr) {
     Object left = evaluate(expr.left);
     Object right = evaluate(expr.right);
+    try {
+      return binary(expr, left, right);
+    }
+    catch (RuntimeError error) {
+      // 运算本身的错误（例如连接出的字符串过长）没有位置信息，使用运算符的位置
+      if (error.token == null) {
+        throw error.at(expr.operator);
+      }
+      throw error;
+    }
+  }
 
-    switch (expr.operator.type) {
+  private Object binary(Expr.Binary expr, Object left, Object right) {
+    // 先走这个表达式特化过的路径，类型不符时退回通用路径
+    BinarySite site = expr.site;
+    switch (site.state) {
+      case BinarySite.NUMBERS:
+        if (left instanceof Double && right instanceof Double) {
+          return numberBinary(expr.operator.type, (double)left, (double)right);
+        }
+        site.deoptimize();
+        break;
+      case BinarySite.STRINGS:
+        if (LoxRope.isString(left) && LoxRope.isString(right)) {
+          return allocate(expr.operator, LoxRope.concat((CharSequence)left, (CharSequence)right, budget));
+        }
+        site.deoptimize();
+        break;
+      case BinarySite.UNINITIALIZED:
+        Object result = genericBinary(expr.operator.type, left, right);
+        site.specialize(expr.operator.type, left, right);
+        return result;
+    }
+    return genericBinary(expr.operator.type, left, right);
+  }
+
+  // 两个操作数都是数字，结果与genericBinary相同
+  Object numberBinary(TokenType operator, double left, double right) {
+    switch (operator) {
+      case GREATER:
+        return left > right;
+      case GREATER_EQUAL:
+        return left >= right;
+      case LESS:
+        return left < right;
+      case LESS_EQUAL:
+        return left <= right;
+      // 与isEqual中的Double.equals一致
+      case BANG_EQUAL:
+        return Double.compare(left, right) != 0;
+      case EQUAL_EQUAL:
+        return Double.compare(left, right) == 0;
+      case MINUS:
+        return left - right;
+      case PLUS:
+        return left + right;
+      case SLASH:
+        if (right == 0) {
+          throw new RuntimeError("Divisor cannot be 0.");
+        }
+        return left / right;
+      case STAR:
+        return left * right;
+    }
+    // 不会到达这里
+    return null;
+  }
+
+  // 运算出错时抛出没有位置信息的RuntimeError，由调用者补上运算符的位置。
+  // 这样紧凑AST只在出错时才需要创建运算符的Token
+  Object genericBinary(TokenType operator, Object left, Object right) {
+    switch (operator) {
       // 比较运算符产生布尔值
       case GREATER:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         if (left instanceof Double && right instanceof Double) {
           return (double)left > (double)right;
         }
         else {
-          return compareString(expr.operator.type, left, right);
+          return compareString(operator, left, right);
         }
       case GREATER_EQUAL:
         if (left instanceof Double && right instanceof Double) {
           return (double)left >= (double)right;
         }
         else {
-          return compareString(expr.operator.type, left, right);
+          return compareString(operator, left, right);
         }
       case LESS:
         if (left instanceof Double && right instanceof Double) {
           return (double)left < (double)right;
         }
         else {
-          return compareString(expr.operator.type, left, right);
+          return compareString(operator, left, right);
         }
       case LESS_EQUAL:
         if (left instanceof Double && right instanceof Double) {
           return (double)left <= (double)right;
         }
         else {
-          return compareString(expr.operator.type, left, right);
+          return compareString(operator, left, right);
         }
         // 等式运算符需要支持混合类型
       case BANG_EQUAL:
@@ -360,35 +617,31 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
       case EQUAL_EQUAL:
         return isEqual(left, right);
       case MINUS:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double)left - (double)right;
         // 浮点加法和字符串连接
       case PLUS:
         if (left instanceof Double && right instanceof Double) {
           return (double)left + (double)right;
         }
-        if (left instanceof String && right instanceof String) {
-          return (String)left + (String)right;
+        // 字符串连接不复制操作数，只生成一个新的rope节点
+        if (LoxRope.isString(left) && LoxRope.isString(right)) {
+          return allocate(null, LoxRope.concat((CharSequence)left, (CharSequence)right, budget));
         }
         // right是浮点数
-        if (left instanceof String) {
-            DecimalFormat decimalFormat = new DecimalFormat("0.###############"); // 指定要保留的小数位数
-            String text = decimalFormat.format(right);
-            return left + text;
+        if (LoxRope.isString(left) && right instanceof Double) {
+          return allocate(null, LoxRope.concat((CharSequence)left, NumberFormatter.format((double)right), budget));
         }
         // left是浮点数
-        if (right instanceof String) {
-          DecimalFormat decimalFormat = new DecimalFormat("0.###############"); // 指定要保留的小数位数
-          String text = decimalFormat.format(left);
-          return text + right;
+        if (left instanceof Double && LoxRope.isString(right)) {
+          return allocate(null, LoxRope.concat(NumberFormatter.format((double)left), (CharSequence)right, budget));
         }
-        // 如果上述两种情况都不满足，则抛出异常
-//        throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+        throw new RuntimeError("Operands must be numbers or strings.");
       case SLASH:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double)left / (double)right;
       case STAR:
-        checkNumberOperands(expr.operator, left, right);
+        checkNumberOperands(operator, left, right);
         return (double)left * (double)right;
     }
     // 不会到达这里
@@ -399,11 +652,30 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
   public Object visitCallExpr(Expr.Call expr) {
     // 通常callee是一个标识符
     Object callee = evaluate(expr.callee);
-    List<Object> arguments = new ArrayList<>();
 
-    // 构建函数参数列表
-    for (Expr argument : expr.arguments) {
-      arguments.add(evaluate(argument));
+    // 参数不多于三个时放在局部变量中，通过定长的入口调用，不创建参数列表
+    List<Expr> argumentExprs = expr.arguments;
+    int count = argumentExprs.size();
+    Object a = null;
+    Object b = null;
+    Object c = null;
+    Object[] arguments = null;
+    if (count > 3) {
+      arguments = new Object[count];
+      for (int i = 0; i < count; i++) {
+        arguments[i] = evaluate(argumentExprs.get(i));
+      }
+    }
+    else {
+      if (count > 0) {
+        a = evaluate(argumentExprs.get(0));
+      }
+      if (count > 1) {
+        b = evaluate(argumentExprs.get(1));
+      }
+      if (count > 2) {
+        c = evaluate(argumentExprs.get(2));
+      }
     }
 
     // 类型检查
@@ -412,35 +684,102 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
     LoxCallable function = (LoxCallable)callee;
     // 检查元数
-    if (arguments.size() != function.arity()) {
+    if (count != function.arity()) {
       throw new RuntimeError(expr.paren, "Expected " + function.arity() +
-              " arguments but got " + arguments.size() + ".");
+              " arguments but got " + count + ".");
+    }
+    if (stack != null) {
+      stack.line(expr.paren.line);
+    }
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.functionCalls.increment();
+    }
+    try {
+      // Java函数使用调用处缓存的重载
+      if (function instanceof JavaFunction) {
+        if (arguments == null) {
+          arguments = count == 0 ? new Object[0]
+              : count == 1 ? new Object[] {a} : count == 2 ? new Object[] {a, b} : new Object[] {a, b, c};
+        }
+        return ((JavaFunction)function).call(expr, arguments);
+      }
+      switch (count) {
+        case 0:
+          return function.call0(this);
+        case 1:
+          return function.call1(this, a);
+        case 2:
+          return function.call2(this, a, b);
+        case 3:
+          return function.call3(this, a, b, c);
+        default:
+          return function.call(this, arguments);
+      }
+    }
+    catch (RuntimeError error) {
+      // 本地函数抛出的错误没有位置信息，使用调用处的位置
+      if (error.token == null) {
+        throw error.at(expr.paren);
+      }
+      throw error;
     }
-    return function.call(this, arguments);
   }
 
   @Override
   public Object visitGetExpr(Expr.Get expr) {
     Object object = evaluate(expr.object);
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.propertyLookups.increment();
+    }
     // 只有类的实例才具有属性
     if (object instanceof LoxInstance) {
       return ((LoxInstance)object).get(expr.name);
     }
+    if (object instanceof NativeObject) {
+      return ((NativeObject)object).get(expr.name);
+    }
 
     throw new RuntimeError(expr.name, "Only instances have properties.");
   }
 
   // globals时终指向全局作用域
-  final Environment globals = new Environment();
-  private Environment environment = globals;
-  private final Map<Expr, Integer> locals = new HashMap<>();
-  private static Object uninitialized = new Object();
-
-
-
-  // 定义clock本地函数
-  Interpreter() {
-    globals.define("clock", new LoxCallable() {
+  final GlobalEnvironment globals;
+  // 当前环境，执行紧凑AST时由ArenaInterpreter切换
+  Environment environment;
+  // 当前正在执行的程序的解析结果
+  private Map<Expr, Integer> locals = new HashMap<>();
+  static final Object uninitialized = new Object();
+  // 执行紧凑AST的解释器，第一次用到时创建
+  private ArenaInterpreter arena = null;
+  // 资源限制，以及本解释器手中还剩的燃料
+  private ExecutionBudget budget = new ExecutionBudget();
+  private int fuel = 0;
+  private int granted = 0;
+  // 开启分析时本线程的lox调用栈，否则为null
+  private ShadowStack stack = null;
+  private Profiler profiler = null;
+  // 尚未计入budget的分配字节数，只由本解释器的线程访问
+  private long allocated = 0;
+  private final Diagnostics diagnostics;
+  // 交互模式下表达式语句会打印其值
+  final boolean isPrompt;
+  // print的输出目标，默认逐行写到标准输出，宿主可以替换
+  private OutputSink output = OutputSink.stdout(true);
+
+
+
+  // 定义本地函数
+  Interpreter(Diagnostics diagnostics, boolean isPrompt) {
+    this.globals = new GlobalEnvironment();
+    this.environment = globals;
+    this.diagnostics = diagnostics;
+    this.isPrompt = isPrompt;
+
+    // clock、clockNanos等不需要访问解释器的本地函数由Java静态方法实现
+    JavaFunction.registerAll(globals, StandardNatives.class);
+
+    // Map()创建一个空的哈希表
+    globals.define("Map", new LoxCallable() {
       @Override
       public int arity() {
         return 0;
@@ -448,19 +787,232 @@ class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
       @Override
       public Object call(Interpreter interpreter, List<Object> arguments) {
-        return (double)System.currentTimeMillis() / 1000.0;
+        interpreter.allocate(null, ExecutionBudget.MAP_BYTES);
+        return new LoxMap();
+      }
+
+      @Override
+      public String toString() {
+        return "<native fn Map>";
       }
     });
+
+    // Channel(capacity)创建一个有界通道
+    globals.define("Channel", new NativeFunction("Channel", 1, (interpreter, arguments) -> {
+      Object capacity = arguments.get(0);
+      if (!(capacity instanceof Double) || (double)capacity < 1
+          || (double)capacity != Math.floor((double)capacity) || (double)capacity > Integer.MAX_VALUE) {
+        throw new RuntimeError("Channel capacity must be a positive integer.");
+      }
+      interpreter.allocate(null, ExecutionBudget.CHANNEL_BYTES
+          + (long)ExecutionBudget.CHANNEL_SLOT_BYTES * (long)(double)capacity);
+      return new LoxChannel((int)(double)capacity);
+    }));
+
+    // 在ForkJoinPool上并行处理以0..n-1为键的Map或一个整数区间
+    globals.define("parallelMap", new NativeFunction("parallelMap", 2, (interpreter, arguments) ->
+        LoxParallel.map(interpreter, checkArray(arguments.get(0)), checkFunction(arguments.get(1), 1))));
+    globals.define("parallelReduce", new NativeFunction("parallelReduce", 3, (interpreter, arguments) ->
+        LoxParallel.reduce(interpreter, checkArray(arguments.get(0)), checkFunction(arguments.get(1), 2),
+            arguments.get(2))));
+    globals.define("parallelFor", new NativeFunction("parallelFor", 3, (interpreter, arguments) -> {
+      if (!(arguments.get(0) instanceof Double) || !(arguments.get(1) instanceof Double)) {
+        throw new RuntimeError("parallelFor bounds must be numbers.");
+      }
+      LoxParallel.forEach(interpreter, (double)arguments.get(0), (double)arguments.get(1),
+          checkFunction(arguments.get(2), 1));
+      return null;
+    }));
+
+    // spawn(fn)在虚拟线程上执行无参函数fn，await(task)等待其结果
+    globals.define("spawn", new NativeFunction("spawn", 1, (interpreter, arguments) -> {
+      Object callable = arguments.get(0);
+      if (!(callable instanceof LoxCallable) || ((LoxCallable)callable).arity() != 0) {
+        throw new RuntimeError("spawn expects a function with no parameters.");
+      }
+      return LoxTask.spawn(interpreter, (LoxCallable)callable);
+    }));
+    globals.define("await", new NativeFunction("await", 1, (interpreter, arguments) -> {
+      Object task = arguments.get(0);
+      if (!(task instanceof LoxTask)) {
+        throw new RuntimeError("Can only await tasks.");
+      }
+      return ((LoxTask)task).await();
+    }));
+  }
+
+  private static LoxMap checkArray(Object array) {
+    if (!(array instanceof LoxMap)) {
+      throw new RuntimeError("Expected a Map with keys 0 to n-1.");
+    }
+    return (LoxMap)array;
+  }
+
+  private static LoxCallable checkFunction(Object function, int arity) {
+    if (!(function instanceof LoxCallable) || ((LoxCallable)function).arity() != arity) {
+      throw new RuntimeError("Expected a function of " + arity + " argument" + (arity == 1 ? "" : "s") + ".");
+    }
+    return (LoxCallable)function;
+  }
+
+  // spawn的任务使用的解释器：共享全局变量、输出和错误报告，但有自己的当前环境
+  Interpreter(Interpreter parent) {
+    this.globals = parent.globals;
+    this.environment = globals;
+    this.locals = parent.locals;
+    this.diagnostics = parent.diagnostics;
+    this.isPrompt = false;
+    this.output = parent.output;
+    this.budget = parent.budget;
+    setProfiler(parent.profiler);
+  }
+
+  // 执行模块的顶层代码。使用共享全局变量的解释器，交互模式下模块的表达式语句也不打印
+  void executeModule(Program module) {
+    Interpreter interpreter = new Interpreter(this);
+    try {
+      interpreter.executeBlock(module.statements, globals, module.locals);
+    }
+    finally {
+      interpreter.finish();
+    }
   }
 
-  void interpret(List<Stmt> statements) {
+  // 执行一个程序，发生运行时错误时返回false
+  boolean interpret(Program program) {
+    Map<Expr, Integer> previous = locals;
     try {
-      for (Stmt statement : statements) {
+      locals = program.locals;
+      if (program.arena != null) {
+        arena().execute(program.arena);
+        return true;
+      }
+      for (Stmt statement : program.statements) {
         execute(statement);
       }
+      return true;
+    }
+    catch (RuntimeError error) {
+      // 先写出已缓冲的输出，保证错误信息出现在它们之后
+      output.flush();
+      diagnostics.runtimeError(error);
+      return false;
+    }
+    finally {
+      locals = previous;
+      flushBudget();
+    }
+  }
+
+  // 从宿主调用一个无参数的全局函数，发生运行时错误时返回false。
+  // 函数仍绑定在导入的模块上时，先执行模块
+  boolean interpret(String name) {
+    try {
+      Object function = globals.lookup(name);
+      if (function instanceof LoxModule) {
+        function = ((LoxModule)function).force(this, new Token(TokenType.IDENTIFIER, name, null, 0));
+      }
+      if (!(function instanceof LoxCallable) || ((LoxCallable)function).arity() != 0) {
+        throw new IllegalArgumentException("'" + name + "' is not a function without parameters.");
+      }
+      ((LoxCallable)function).call0(this);
+      return true;
     }
     catch (RuntimeError error) {
-      lox.runtimeError(error);
+      output.flush();
+      diagnostics.runtimeError(error);
+      return false;
+    }
+    finally {
+      flushBudget();
+    }
+  }
+
+  // 在循环回边和函数入口调用，平时只有一次递减和比较
+  void safepoint(Token token) {
+    if (--fuel <= 0) {
+      // settle已经计入这一批，即使它抛出异常，flushBudget也不再重复计入
+      int used = granted;
+      fuel = granted = 0;
+      fuel = granted = budget.settle(token, used);
+    }
+  }
+
+  // 记录一次代替脚本进行的分配，每满一批才结算一次
+  void allocate(Token token, long bytes) {
+    allocated += bytes;
+    if (allocated >= ExecutionBudget.ALLOCATION_BATCH) {
+      long batch = allocated;
+      allocated = 0;
+      budget.charge(token, batch);
     }
   }
+
+  // 字符串连接的结果：新的rope节点，或者新复制出来的短字符串。
+  // rope节点只计入它本身和连接时可能新生成的一个短片段（合并的片段或数字的文本），
+  // 展开后的长度由LoxRope在展开时计入
+  private CharSequence allocate(Token token, CharSequence text) {
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.stringConcatenations.increment();
+    }
+    if (text instanceof LoxRope) {
+      allocate(token, ExecutionBudget.ROPE_BYTES + ExecutionBudget.STRING_BYTES + 2L * LoxRope.FLAT_LIMIT);
+    }
+    else {
+      allocate(token, ExecutionBudget.STRING_BYTES + 2L * text.length());
+    }
+    return text;
+  }
+
+  // 把本地累计的分配零头和手中这一批已用掉的燃料计入budget，在解释器停止工作时调用。
+  // 派生的解释器往往用不完一批燃料，不在这里结算就永远不会计入
+  void flushBudget() {
+    budget.record(allocated);
+    allocated = 0;
+    budget.consume(granted - fuel);
+    fuel = granted = 0;
+  }
+
+  // 派生的解释器完成工作时调用
+  void finish() {
+    flushBudget();
+    setProfiler(null);
+  }
+
+  ArenaInterpreter arena() {
+    if (arena == null) {
+      arena = new ArenaInterpreter(this);
+    }
+    return arena;
+  }
+
+  ShadowStack stack() {
+    return stack;
+  }
+
+  void setProfiler(Profiler profiler) {
+    if (this.profiler != null) {
+      this.profiler.unregister(stack);
+    }
+    this.profiler = profiler;
+    this.stack = null;
+    if (profiler != null) {
+      stack = new ShadowStack();
+      profiler.register(stack);
+    }
+  }
+
+  void setBudget(ExecutionBudget budget) {
+    this.budget = budget;
+    this.fuel = this.granted = 0;
+  }
+
+  OutputSink output() {
+    return output;
+  }
+
+  void setOutput(OutputSink output) {
+    this.output.flush();
+    this.output = output;
+  }
 }
\ No newline at end of file
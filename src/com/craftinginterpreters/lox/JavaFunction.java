@@ -0,0 +1,330 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+// 注册为lox本地函数的Java静态方法。每个重载被适配成 (Object[])Object 的MethodHandle，
+// 参数在句柄中从lox值转换为Java类型，返回值转换回lox值。
+// 调用处（Expr.Call.target或AstArena.targets）缓存上次选中的重载，参数类型仍然符合时直接调用
+class JavaFunction implements LoxCallable {
+  // 参数的转换方式
+  private enum Kind {
+    DOUBLE, FLOAT, INT, LONG, BOOLEAN, STRING, OBJECT, REFERENCE
+  }
+
+  // 一个Java方法
+  static final class Overload {
+    final JavaFunction owner;
+    private final Kind[] kinds;
+    private final Class<?>[] types;
+    private final MethodHandle handle;
+
+    private Overload(JavaFunction owner, Kind[] kinds, Class<?>[] types, MethodHandle handle) {
+      this.owner = owner;
+      this.kinds = kinds;
+      this.types = types;
+      this.handle = handle;
+    }
+
+    boolean accepts(Object[] arguments) {
+      for (int i = 0; i < kinds.length; i++) {
+        if (!JavaFunction.accepts(kinds[i], types[i], arguments[i])) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    Object invoke(Object[] arguments) {
+      try {
+        return (Object)handle.invokeExact(arguments);
+      }
+      catch (RuntimeError error) {
+        throw error;
+      }
+      catch (Throwable e) {
+        throw new RuntimeError("Native function '" + owner.name + "' failed: " + e + ".");
+      }
+    }
+  }
+
+  private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+  private static final MethodHandle TO_LOX;
+  private static final MethodHandle TO_DOUBLE;
+  private static final MethodHandle TO_STRING;
+  private static final MethodHandle TO_OBJECT;
+
+  static {
+    try {
+      TO_LOX = lookup.findStatic(JavaFunction.class, "toLox", MethodType.methodType(Object.class, Object.class));
+      TO_DOUBLE = lookup.findStatic(JavaFunction.class, "toDouble", MethodType.methodType(double.class, Object.class));
+      TO_STRING = lookup.findStatic(JavaFunction.class, "toJavaString",
+          MethodType.methodType(String.class, Object.class));
+      TO_OBJECT = lookup.findStatic(JavaFunction.class, "toJavaObject",
+          MethodType.methodType(Object.class, Object.class));
+    }
+    catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final String name;
+  private final int arity;
+  private volatile List<Overload> overloads = new ArrayList<>();
+
+  private JavaFunction(String name, int arity) {
+    this.name = name;
+    this.arity = arity;
+  }
+
+  // 在全局环境中定义name，已有同名的Java函数时加为它的重载
+  static void register(Environment globals, String name, Method method) {
+    if (!Modifier.isStatic(method.getModifiers())) {
+      throw new IllegalArgumentException("Native '" + name + "' must be a static method: " + method + ".");
+    }
+    Object existing = globals.lookup(name);
+    JavaFunction function;
+    if (existing instanceof JavaFunction) {
+      function = (JavaFunction)existing;
+      if (function.arity != method.getParameterCount()) {
+        throw new IllegalArgumentException("Overloads of native '" + name + "' must have the same arity.");
+      }
+    }
+    else {
+      function = new JavaFunction(name, method.getParameterCount());
+    }
+    function.add(method);
+    globals.define(name, function);
+  }
+
+  // 注册类中所有带@LoxNative的方法
+  static void registerAll(Environment globals, Class<?> natives) {
+    int count = 0;
+    for (Method method : natives.getDeclaredMethods()) {
+      LoxNative annotation = method.getAnnotation(LoxNative.class);
+      if (annotation != null) {
+        register(globals, annotation.value().isEmpty() ? method.getName() : annotation.value(), method);
+        count++;
+      }
+    }
+    if (count == 0) {
+      throw new IllegalArgumentException(natives.getName() + " has no @LoxNative methods.");
+    }
+  }
+
+  private void add(Method method) {
+    MethodHandle handle;
+    try {
+      // 宿主的类不一定是公有的
+      method.trySetAccessible();
+      handle = lookup.unreflect(method);
+    }
+    catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Native '" + name + "' is not accessible: " + method + ".", e);
+    }
+
+    Class<?>[] types = method.getParameterTypes();
+    Kind[] kinds = new Kind[types.length];
+    MethodHandle[] filters = new MethodHandle[types.length];
+    for (int i = 0; i < types.length; i++) {
+      kinds[i] = kind(types[i]);
+      filters[i] = converter(kinds[i], types[i]);
+    }
+    // (Object...)Object：参数逐个转换，返回值转换为lox值，void返回nil
+    handle = MethodHandles.filterArguments(handle, 0, filters);
+    handle = handle.asType(handle.type().changeReturnType(Object.class));
+    handle = MethodHandles.filterReturnValue(handle, TO_LOX);
+    handle = handle.asSpreader(Object[].class, types.length)
+        .asType(MethodType.methodType(Object.class, Object[].class));
+
+    List<Overload> updated = new ArrayList<>(overloads);
+    updated.add(new Overload(this, kinds, types, handle));
+    overloads = updated;
+  }
+
+  private static Kind kind(Class<?> type) {
+    if (type == double.class || type == Double.class) {
+      return Kind.DOUBLE;
+    }
+    if (type == float.class || type == Float.class) {
+      return Kind.FLOAT;
+    }
+    if (type == int.class || type == Integer.class) {
+      return Kind.INT;
+    }
+    if (type == long.class || type == Long.class) {
+      return Kind.LONG;
+    }
+    if (type == boolean.class || type == Boolean.class) {
+      return Kind.BOOLEAN;
+    }
+    if (type == String.class || type == CharSequence.class) {
+      return Kind.STRING;
+    }
+    if (type == Object.class) {
+      return Kind.OBJECT;
+    }
+    if (type.isPrimitive()) {
+      throw new IllegalArgumentException("Unsupported native parameter type " + type + ".");
+    }
+    // 其他Java对象原样传递，通常是之前某个本地函数返回的
+    return Kind.REFERENCE;
+  }
+
+  // (Object)type，accepts()已经检查过参数
+  private static MethodHandle converter(Kind kind, Class<?> type) {
+    MethodHandle converter;
+    switch (kind) {
+      case DOUBLE:
+      case FLOAT:
+      case INT:
+      case LONG:
+        // 窄化为float/int/long由asType完成
+        converter = TO_DOUBLE;
+        if (kind != Kind.DOUBLE) {
+          converter = MethodHandles.explicitCastArguments(converter,
+              MethodType.methodType(kind == Kind.FLOAT ? float.class : kind == Kind.INT ? int.class : long.class,
+                  Object.class));
+        }
+        break;
+      case STRING:
+        converter = TO_STRING;
+        break;
+      case OBJECT:
+        converter = TO_OBJECT;
+        break;
+      default:
+        converter = MethodHandles.identity(Object.class);
+        break;
+    }
+    return converter.asType(MethodType.methodType(type, Object.class));
+  }
+
+  private static boolean accepts(Kind kind, Class<?> type, Object value) {
+    switch (kind) {
+      case DOUBLE:
+      case FLOAT:
+        return value instanceof Double;
+      case INT:
+        return isIntegral(value, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      case LONG:
+        return isIntegral(value, Long.MIN_VALUE, Long.MAX_VALUE);
+      case BOOLEAN:
+        return value instanceof Boolean;
+      case STRING:
+        return LoxRope.isString(value);
+      case OBJECT:
+        return true;
+      default:
+        return value == null || type.isInstance(value);
+    }
+  }
+
+  private static boolean isIntegral(Object value, double min, double max) {
+    if (!(value instanceof Double)) {
+      return false;
+    }
+    double number = (double)value;
+    return number == Math.floor(number) && number >= min && number <= max;
+  }
+
+  private static double toDouble(Object value) {
+    return (double)value;
+  }
+
+  private static String toJavaString(Object value) {
+    return value.toString();
+  }
+
+  // rope对Java代码来说是内部类型，转换为String
+  private static Object toJavaObject(Object value) {
+    return value instanceof LoxRope ? value.toString() : value;
+  }
+
+  // Java的返回值：数字都变为Double，字符变为String，其他对象原样返回，lox中只能把它们传回给Java函数
+  static Object toLox(Object value) {
+    if (value instanceof Double || value == null || value instanceof Boolean || value instanceof String) {
+      return value;
+    }
+    if (value instanceof Number) {
+      return ((Number)value).doubleValue();
+    }
+    if (value instanceof Character) {
+      return value.toString();
+    }
+    return value;
+  }
+
+  // 选出第一个接受这些参数的重载
+  Overload select(Object[] arguments) {
+    for (Overload overload : overloads) {
+      if (overload.accepts(arguments)) {
+        return overload;
+      }
+    }
+    StringBuilder types = new StringBuilder();
+    for (int i = 0; i < arguments.length; i++) {
+      types.append(i == 0 ? "" : ", ").append(typeName(arguments[i]));
+    }
+    throw new RuntimeError("Native function '" + name + "' cannot be called with (" + types + ").");
+  }
+
+  private static String typeName(Object value) {
+    if (value == null) {
+      return "nil";
+    }
+    if (value instanceof Double) {
+      return "number";
+    }
+    if (value instanceof Boolean) {
+      return "boolean";
+    }
+    if (LoxRope.isString(value)) {
+      return "string";
+    }
+    return value.toString();
+  }
+
+  // 由Interpreter.visitCallExpr调用，使用并更新调用处缓存的重载
+  Object call(Expr.Call site, Object[] arguments) {
+    Overload target = site.target;
+    if (target == null || target.owner != this || !target.accepts(arguments)) {
+      site.target = target = select(arguments);
+    }
+    return target.invoke(arguments);
+  }
+
+  // 由ArenaInterpreter调用，缓存在arena的第slot个槽中
+  Object call(AstArena arena, int slot, Object[] arguments) {
+    Overload target = arena.targets[slot];
+    if (target == null || target.owner != this || !target.accepts(arguments)) {
+      arena.targets[slot] = target = select(arguments);
+    }
+    return target.invoke(arguments);
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    return call(interpreter, arguments.toArray());
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Object[] arguments) {
+    return select(arguments).invoke(arguments);
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn " + name + ">";
+  }
+}
@@ -0,0 +1,187 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// jlox --bench：在同一个JVM中反复执行脚本（或脚本中的一个函数），
+// 先预热再测量，报告耗时的均值、分位数和每次执行的分配量
+class LoxBench {
+  // 为null时每次执行整个脚本，否则先执行一次脚本，再反复调用这个函数
+  String function = null;
+  int warmup = 5;
+  int iterations = 10;
+  // 结果写成JSON，以及与之比较的基线
+  String json = null;
+  String baseline = null;
+  // 编译成紧凑AST执行
+  boolean compact = false;
+
+  private static final Pattern JSON_NUMBER = Pattern.compile("\"(\\w+)\"\\s*:\\s*(-?[0-9][0-9.eE+-]*)");
+
+  // 返回进程的退出码
+  int run(String path) throws IOException {
+    byte[] bytes = Files.readAllBytes(Paths.get(path));
+    // 脚本的输出会影响计时，全部丢弃
+    OutputSink discard = new OutputSink.Stream(OutputStream.nullOutputStream(),
+        OutputSink.FlushPolicy.ON_SIZE, OutputSink.DEFAULT_LIMIT);
+    LoxEngine engine = new LoxEngine(new Diagnostics(System.err), discard, false);
+    String source = new String(bytes, Charset.defaultCharset());
+    Program program = compact ? engine.compileCompact(source) : engine.compile(source);
+    if (!program.isValid()) {
+      return 65;
+    }
+    if (function != null && !engine.execute(program)) {
+      return 70;
+    }
+
+    try {
+      return measure(engine, program, path);
+    }
+    catch (IllegalArgumentException e) {
+      // 脚本中没有这个函数
+      System.err.println(e.getMessage());
+      return 65;
+    }
+  }
+
+  private int measure(LoxEngine engine, Program program, String path) throws IOException {
+    for (int i = 0; i < warmup; i++) {
+      if (!iteration(engine, program)) {
+        return 70;
+      }
+    }
+
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long[] nanos = new long[iterations];
+    long allocated = 0;
+    for (int i = 0; i < iterations; i++) {
+      long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+      long start = System.nanoTime();
+      boolean succeeded = iteration(engine, program);
+      nanos[i] = System.nanoTime() - start;
+      allocated += threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+      if (!succeeded) {
+        return 70;
+      }
+    }
+
+    Map<String, Double> results = statistics(nanos);
+    results.put("allocatedBytes", (double)allocated / iterations);
+    String name = function == null ? path : path + ":" + function;
+    report(name, results);
+
+    if (baseline != null) {
+      compare(parse(Files.readString(Paths.get(baseline))), results);
+    }
+    if (json != null) {
+      try (Writer out = Files.newBufferedWriter(Paths.get(json))) {
+        writeJson(out, name, results);
+      }
+    }
+    return 0;
+  }
+
+  private boolean iteration(LoxEngine engine, Program program) {
+    if (function == null) {
+      return engine.execute(program);
+    }
+    return engine.call(function, new ExecutionBudget());
+  }
+
+  // 各项统计都以纳秒为单位，分位数取最近秩
+  private Map<String, Double> statistics(long[] nanos) {
+    long[] sorted = nanos.clone();
+    Arrays.sort(sorted);
+    double sum = 0;
+    for (long sample : sorted) {
+      sum += sample;
+    }
+    double mean = sum / sorted.length;
+    double squares = 0;
+    for (long sample : sorted) {
+      squares += (sample - mean) * (sample - mean);
+    }
+
+    // 保持插入顺序，JSON和报告中的字段顺序固定
+    Map<String, Double> results = new LinkedHashMap<>();
+    results.put("warmup", (double)warmup);
+    results.put("iterations", (double)sorted.length);
+    results.put("mean", mean);
+    results.put("stddev", sorted.length > 1 ? Math.sqrt(squares / (sorted.length - 1)) : 0);
+    results.put("min", (double)sorted[0]);
+    results.put("p50", (double)percentile(sorted, 50));
+    results.put("p90", (double)percentile(sorted, 90));
+    results.put("p99", (double)percentile(sorted, 99));
+    results.put("max", (double)sorted[sorted.length - 1]);
+    return results;
+  }
+
+  private static long percentile(long[] sorted, int percent) {
+    int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  private void report(String name, Map<String, Double> results) {
+    System.out.println(name + ": " + iterations + " iterations after " + warmup + " warmup");
+    System.out.printf("  mean %s +- %s%n", millis(results.get("mean")), millis(results.get("stddev")));
+    System.out.printf("  min %s  p50 %s  p90 %s  p99 %s  max %s%n",
+        millis(results.get("min")), millis(results.get("p50")), millis(results.get("p90")),
+        millis(results.get("p99")), millis(results.get("max")));
+    System.out.printf("  allocated %s/op%n", kilobytes(results.get("allocatedBytes")));
+  }
+
+  // 只比较耗时和分配，正的百分比表示比基线更慢或分配更多
+  private void compare(Map<String, Double> previous, Map<String, Double> current) {
+    System.out.println("  compared to baseline " + baseline + ":");
+    for (String key : new String[] {"mean", "p50", "p90", "p99", "allocatedBytes"}) {
+      Double before = previous.get(key);
+      if (before == null) {
+        continue;
+      }
+      double after = current.get(key);
+      boolean bytes = key.equals("allocatedBytes");
+      System.out.printf("    %-14s %s -> %s (%+.1f%%)%n", key,
+          bytes ? kilobytes(before) : millis(before), bytes ? kilobytes(after) : millis(after),
+          before == 0 ? 0.0 : (after - before) / before * 100);
+    }
+  }
+
+  private static String millis(double nanos) {
+    return String.format("%.3f ms", nanos / 1_000_000);
+  }
+
+  private static String kilobytes(double bytes) {
+    return String.format("%.1f KB", bytes / 1024);
+  }
+
+  private static void writeJson(Writer out, String name, Map<String, Double> results) throws IOException {
+    out.write("{\n  \"name\": \"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\",\n");
+    out.write("  \"unit\": \"ns\"");
+    for (Map.Entry<String, Double> entry : results.entrySet()) {
+      out.write(",\n  \"" + entry.getKey() + "\": " + NumberFormatter.format(entry.getValue()));
+    }
+    out.write("\n}\n");
+  }
+
+  // 只需要读回writeJson写出的数值字段
+  private static Map<String, Double> parse(String text) {
+    Map<String, Double> values = new HashMap<>();
+    Matcher matcher = JSON_NUMBER.matcher(text);
+    while (matcher.find()) {
+      values.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+    }
+    return values;
+  }
+}
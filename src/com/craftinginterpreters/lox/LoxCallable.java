@@ -1,8 +1,33 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 interface LoxCallable {
   int arity();
   Object call(Interpreter interpreter, List<Object> arguments);
-}
\ No newline at end of file
+
+  // 参数较少时解释器直接调用定长的入口，不必为参数创建列表。
+  // 默认转为列表调用call，本地函数只需要实现call；LoxFunction和LoxClass覆盖了全部入口
+  default Object call0(Interpreter interpreter) {
+    return call(interpreter, Collections.emptyList());
+  }
+
+  default Object call1(Interpreter interpreter, Object a) {
+    return call(interpreter, Collections.singletonList(a));
+  }
+
+  default Object call2(Interpreter interpreter, Object a, Object b) {
+    return call(interpreter, Arrays.asList(a, b));
+  }
+
+  default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    return call(interpreter, Arrays.asList(a, b, c));
+  }
+
+  // 参数多于三个时使用
+  default Object call(Interpreter interpreter, Object[] arguments) {
+    return call(interpreter, Arrays.asList(arguments));
+  }
+}
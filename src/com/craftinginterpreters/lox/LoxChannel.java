@@ -0,0 +1,235 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 有界通道，用于并发任务之间传递消息。
+// 数据保存在无锁的环形队列中（每个槽位带序号，多生产者多消费者），
+// 只有队列满或空、需要阻塞等待时才会用到锁
+class LoxChannel implements NativeObject {
+  // 队列为空时poll的返回值，nil本身也是合法的消息
+  private static final Object EMPTY = new Object();
+
+  private final int capacity;
+  // 环形队列的槽位数。序号算法至少需要两个槽位才能区分“可写”和“可读”
+  private final int slots;
+  private final AtomicReferenceArray<Object> buffer;
+  // 槽位的序号：等于写入位置时可写，等于写入位置+1时可读
+  private final AtomicLongArray sequence;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+  private volatile boolean closed = false;
+
+  // 阻塞等待的慢路径
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private volatile int waitingReceivers = 0;
+  private volatile int waitingSenders = 0;
+
+  LoxChannel(int capacity) {
+    this.capacity = capacity;
+    this.slots = Math.max(2, capacity);
+    this.buffer = new AtomicReferenceArray<>(slots);
+    this.sequence = new AtomicLongArray(slots);
+    for (int i = 0; i < slots; i++) {
+      sequence.set(i, i);
+    }
+  }
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "send":
+        return new NativeFunction("send", 1, (interpreter, arguments) -> {
+          send(name, arguments.get(0));
+          return null;
+        });
+      case "receive":
+        return new NativeFunction("receive", 0, (interpreter, arguments) -> receive(name));
+      case "trySend":
+        return new NativeFunction("trySend", 1, (interpreter, arguments) -> {
+          checkOpen(name);
+          return trySend(arguments.get(0));
+        });
+      case "tryReceive":
+        return new NativeFunction("tryReceive", 0, (interpreter, arguments) -> {
+          Object value = poll();
+          return value == EMPTY ? null : value;
+        });
+      case "close":
+        return new NativeFunction("close", 0, (interpreter, arguments) -> {
+          close();
+          return null;
+        });
+      case "isClosed":
+        return new NativeFunction("isClosed", 0, (interpreter, arguments) -> closed);
+      case "size":
+        return new NativeFunction("size", 0, (interpreter, arguments) -> (double)size());
+    }
+    throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+  }
+
+  // 队列满时阻塞，向已关闭的通道发送是错误
+  void send(Token token, Object value) {
+    for (;;) {
+      checkOpen(token);
+      if (trySend(value)) {
+        return;
+      }
+      lock.lock();
+      try {
+        waitingSenders++;
+        while (size() >= capacity && !closed) {
+          notFull.await();
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeError(token, "Interrupted while sending.");
+      }
+      finally {
+        waitingSenders--;
+        lock.unlock();
+      }
+    }
+  }
+
+  // 队列空时阻塞；通道关闭且取空后返回nil
+  Object receive(Token token) {
+    for (;;) {
+      Object value = poll();
+      if (value != EMPTY) {
+        return value;
+      }
+      if (closed && size() == 0) {
+        return null;
+      }
+      lock.lock();
+      try {
+        waitingReceivers++;
+        while (size() == 0 && !closed) {
+          notEmpty.await();
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeError(token, "Interrupted while receiving.");
+      }
+      finally {
+        waitingReceivers--;
+        lock.unlock();
+      }
+    }
+  }
+
+  boolean trySend(Object value) {
+    if (!offer(value)) {
+      return false;
+    }
+    if (waitingReceivers > 0) {
+      signal(notEmpty);
+    }
+    return true;
+  }
+
+  void close() {
+    closed = true;
+    lock.lock();
+    try {
+      notEmpty.signalAll();
+      notFull.signalAll();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  int size() {
+    long size = tail.get() - head.get();
+    return (int)Math.max(0, Math.min(size, capacity));
+  }
+
+  private void checkOpen(Token token) {
+    if (closed) {
+      throw new RuntimeError(token, "Send on a closed channel.");
+    }
+  }
+
+  private boolean offer(Object value) {
+    long position = tail.get();
+    int index;
+    for (;;) {
+      // 容量为1时槽位比容量多，需要单独检查
+      if (position - head.get() >= capacity) {
+        return false;
+      }
+      index = (int)(position % slots);
+      long difference = sequence.get(index) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = tail.get();
+      }
+      else if (difference < 0) {
+        // 队列已满
+        return false;
+      }
+      else {
+        position = tail.get();
+      }
+    }
+    buffer.set(index, value);
+    // 更新序号即发布该槽位
+    sequence.set(index, position + 1);
+    return true;
+  }
+
+  private Object poll() {
+    long position = head.get();
+    int index;
+    for (;;) {
+      index = (int)(position % slots);
+      long difference = sequence.get(index) - (position + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = head.get();
+      }
+      else if (difference < 0) {
+        // 队列为空，或者生产者还没有写完这个槽位
+        return EMPTY;
+      }
+      else {
+        position = head.get();
+      }
+    }
+    Object value = buffer.get(index);
+    buffer.set(index, null);
+    sequence.set(index, position + slots);
+    if (waitingSenders > 0) {
+      signal(notFull);
+    }
+    return value;
+  }
+
+  private void signal(Condition condition) {
+    lock.lock();
+    try {
+      condition.signal();
+    }
+    finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<channel " + capacity + ">";
+  }
+}
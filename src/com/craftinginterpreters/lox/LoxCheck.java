@@ -0,0 +1,88 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// jlox --check：扫描、解析并解析变量，检查目录下所有.lox文件的编译错误，不执行它们。
+// 每个文件是一个编译单元，有自己的Diagnostics，在ForkJoinPool上并行编译；导入的模块在所有单元间共享。
+// 报告按文件、行号排序并去重：同一个模块的错误会从每个导入它的文件报告一次
+class LoxCheck {
+  // 报告中的错误都已归到各自的文件
+  private static final Comparator<Diagnostics.Entry> ORDER =
+      Comparator.<Diagnostics.Entry, String>comparing(entry -> entry.file)
+          .thenComparingInt(entry -> entry.line)
+          .thenComparing(entry -> entry.message);
+
+  private final ModuleCache modules = new ModuleCache();
+
+  // 返回进程的退出码：0没有错误，65有编译错误，66找不到要检查的文件
+  int run(String path, PrintStream out) throws IOException {
+    Path root = Paths.get(path).toAbsolutePath().normalize();
+    if (!Files.exists(root)) {
+      out.println("No such file or directory: " + path);
+      return 66;
+    }
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(root)) {
+      files = walk.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".lox"))
+          .collect(Collectors.toList());
+    }
+    if (files.isEmpty()) {
+      out.println("No .lox files in " + path + ".");
+      return 66;
+    }
+
+    Set<Diagnostics.Entry> report = new TreeSet<>(ORDER);
+    List<List<Diagnostics.Entry>> units = files.parallelStream().map(this::check).collect(Collectors.toList());
+    int failed = 0;
+    for (List<Diagnostics.Entry> unit : units) {
+      if (!unit.isEmpty()) {
+        failed++;
+      }
+      report.addAll(unit);
+    }
+
+    // 目录下的文件用相对路径显示
+    Path base = Files.isDirectory(root) ? root : root.getParent();
+    for (Diagnostics.Entry entry : report) {
+      Path file = Paths.get(entry.file);
+      String name = file.startsWith(base) ? base.relativize(file).toString() : entry.file;
+      out.println(name + ": " + entry.text());
+    }
+    out.println(report.size() + " error" + (report.size() == 1 ? "" : "s") + " in " + failed + " of "
+        + files.size() + " file" + (files.size() == 1 ? "" : "s") + ".");
+    return report.isEmpty() ? 0 : 65;
+  }
+
+  // 编译一个文件，返回它的错误。被导入的模块中的错误已经归到模块的路径
+  private List<Diagnostics.Entry> check(Path file) {
+    List<Diagnostics.Entry> entries = new ArrayList<>();
+    String source;
+    try {
+      source = new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+    catch (IOException e) {
+      entries.add(new Diagnostics.Entry(file.toString(), 0,
+          "Cannot read file (" + e.getClass().getSimpleName() + ").", false));
+      return entries;
+    }
+    Diagnostics diagnostics = new Diagnostics();
+    LoxEngine.compile(source, diagnostics, false, false,
+        statements -> modules.link(statements, file.getParent(), diagnostics));
+    for (Diagnostics.Entry entry : diagnostics.entries()) {
+      entries.add(entry.in(file.toString()));
+    }
+    return entries;
+  }
+}
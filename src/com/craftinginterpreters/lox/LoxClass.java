@@ -6,10 +6,16 @@ import java.util.Map;
 class LoxClass implements LoxCallable{
   final String name;
   private final Map<String, LoxFunction> methods;
+  // 类创建后方法不再改变，init构造函数和元数在构造时查好，避免每次创建对象都查表
+  private final LoxFunction initializer;
+  private final int arity;
 
   LoxClass(String name, Map<String, LoxFunction> methods) {
     this.name = name;
     this.methods = methods;
+    this.initializer = methods.get("init");
+    // 返回init构造函数的元数
+    this.arity = initializer == null ? 0 : initializer.arity();
   }
 
   LoxFunction findMethod(String name) {
@@ -19,17 +25,25 @@ class LoxClass implements LoxCallable{
     return null;
   }
 
+  // init方法是否来自这个声明，标量替换用它确认类没有被重定义
+  boolean isInitializedBy(Stmt.Function declaration) {
+    return initializer != null && initializer.isDeclaredBy(declaration);
+  }
+
   @Override
   public String toString() {
     return name;
   }
 
+  private LoxInstance instantiate(Interpreter interpreter) {
+    interpreter.allocate(null, ExecutionBudget.INSTANCE_BYTES);
+    return new LoxInstance(this);
+  }
+
+  // 如果有init构造函数，立即绑定对象并调用init
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
-    LoxInstance instance = new LoxInstance(this);
-    // 查找init构造函数
-    LoxFunction initializer = findMethod("init");
-    // 如果找到init构造函数，立即绑定对象并调用init
+    LoxInstance instance = instantiate(interpreter);
     if (initializer != null) {
       initializer.bind(instance).call(interpreter, arguments);
     }
@@ -37,12 +51,45 @@ class LoxClass implements LoxCallable{
   }
 
   @Override
-  public int arity() {
-    LoxFunction initializer = findMethod("init");
-    if (initializer == null) {
-      return 0;
+  public Object call0(Interpreter interpreter) {
+    LoxInstance instance = instantiate(interpreter);
+    if (initializer != null) {
+      initializer.bind(instance).call0(interpreter);
     }
-    // 返回init构造函数的元数
-    return initializer.arity();
+    return instance;
+  }
+
+  // 调用者已按arity检查过参数个数，有参数时一定有init
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    LoxInstance instance = instantiate(interpreter);
+    initializer.bind(instance).call1(interpreter, a);
+    return instance;
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    LoxInstance instance = instantiate(interpreter);
+    initializer.bind(instance).call2(interpreter, a, b);
+    return instance;
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    LoxInstance instance = instantiate(interpreter);
+    initializer.bind(instance).call3(interpreter, a, b, c);
+    return instance;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Object[] arguments) {
+    LoxInstance instance = instantiate(interpreter);
+    initializer.bind(instance).call(interpreter, arguments);
+    return instance;
+  }
+
+  @Override
+  public int arity() {
+    return arity;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// 可嵌入的lox解释器。每个引擎拥有自己的解释器、全局变量、错误报告和输出，
+// 不同引擎之间没有共享的可变状态
+public class LoxEngine {
+  private final Diagnostics diagnostics;
+  private final Interpreter interpreter;
+  // 交互模式：表达式语句可以省略分号，并且会打印其值
+  private final boolean interactive;
+  // 本引擎加载过的模块，在所有编译的程序之间共享
+  private final ModuleCache modules = new ModuleCache();
+  private volatile Path directory = Paths.get("");
+
+  public LoxEngine() {
+    this(new Diagnostics(System.err), OutputSink.stdout(false), false);
+  }
+
+  public LoxEngine(Diagnostics diagnostics, OutputSink output, boolean interactive) {
+    this.diagnostics = diagnostics;
+    this.interactive = interactive;
+    this.interpreter = new Interpreter(diagnostics, interactive);
+    interpreter.setOutput(output);
+  }
+
+  // 扫描、解析、加载导入的模块并解析变量，错误报告到本引擎的Diagnostics
+  public Program compile(String source) {
+    return compile(source, diagnostics, interactive, Optimizer.ENABLED,
+        statements -> modules.link(statements, directory, diagnostics));
+  }
+
+  // 编译成紧凑AST：节点保存在基本类型的数组中，解释器直接执行它，不保留语法树和解析结果。
+  // 用于很大的程序，以减少每个程序占用的内存。不经过Optimizer
+  public Program compileCompact(String source) {
+    Program program = compile(source, diagnostics, interactive, false,
+        statements -> modules.link(statements, directory, diagnostics));
+    if (!program.isValid()) {
+      return program;
+    }
+    return new Program(AstArena.encode(program));
+  }
+
+  // 编译流程，linker在没有语法错误时加载import语句引用的模块
+  static Program compile(String source, Diagnostics diagnostics, boolean interactive, boolean optimize,
+                         Consumer<List<Stmt>> linker) {
+    int errors = diagnostics.errorCount();
+    LoxMetrics.PhaseTimer timer = LoxMetrics.start(LoxMetrics.Phase.SCAN);
+    Scanner scanner = new Scanner(source, diagnostics);
+    List<Token> tokens = scanner.scanTokens();
+    timer.stop();
+
+    timer = LoxMetrics.start(LoxMetrics.Phase.PARSE);
+    Parser parser = new Parser(tokens, diagnostics, interactive);
+    List<Stmt> statements = parser.parse();
+    timer.stop();
+
+    // 有语法错误时不再加载模块、解析变量
+    if (diagnostics.errorCount() == errors) {
+      linker.accept(statements);
+    }
+    Map<Expr, Integer> locals = new HashMap<>();
+    if (diagnostics.errorCount() == errors) {
+      timer = LoxMetrics.start(LoxMetrics.Phase.RESOLVE);
+      Resolver resolver = new Resolver(locals, diagnostics);
+      resolver.resolve(statements);
+      timer.stop();
+    }
+    if (diagnostics.errorCount() == errors && optimize) {
+      timer = LoxMetrics.start(LoxMetrics.Phase.OPTIMIZE);
+      new Optimizer(locals, interactive).optimize(statements);
+      timer.stop();
+    }
+    return new Program(statements, locals, diagnostics.errorCount() == errors);
+  }
+
+  // import语句中的相对路径以directory为基准，默认为当前目录
+  public void setModuleDirectory(Path directory) {
+    this.directory = directory;
+  }
+
+  // 执行编译好的程序，发生运行时错误时返回false
+  public boolean execute(Program program) {
+    return execute(program, new ExecutionBudget());
+  }
+
+  // 在给定的燃料、期限内执行，宿主可以从其他线程调用budget.cancel()停止执行
+  public synchronized boolean execute(Program program, ExecutionBudget budget) {
+    if (!program.isValid()) {
+      return false;
+    }
+    budget.start();
+    interpreter.setBudget(budget);
+    LoxMetrics.PhaseTimer timer = LoxMetrics.start(LoxMetrics.Phase.EXECUTE);
+    try {
+      return interpreter.interpret(program);
+    }
+    finally {
+      timer.stop();
+    }
+  }
+
+  // 调用脚本中定义的一个无参数的全局函数，发生运行时错误时返回false。
+  // 函数来自还没有执行的模块时，模块在同一个budget内执行
+  public synchronized boolean call(String function, ExecutionBudget budget) {
+    budget.start();
+    interpreter.setBudget(budget);
+    LoxMetrics.PhaseTimer timer = LoxMetrics.start(LoxMetrics.Phase.EXECUTE);
+    try {
+      return interpreter.interpret(function);
+    }
+    finally {
+      timer.stop();
+    }
+  }
+
+  // 编译并执行一段源码
+  public boolean run(String source) {
+    Program program = compile(source);
+    return execute(program);
+  }
+
+  // 把Java静态方法注册为名为name的全局函数。参数和返回值在lox值与Java类型之间转换：
+  // 数字对应double/float/int/long，字符串对应String，布尔值对应boolean，nil对应null。
+  // 同名注册多次时作为重载，按参数的类型选择
+  public synchronized void register(String name, Method method) {
+    JavaFunction.register(interpreter.globals, name, method);
+  }
+
+  // 注册类中所有带@LoxNative注解的静态方法
+  public synchronized void register(Class<?> natives) {
+    JavaFunction.registerAll(interpreter.globals, natives);
+  }
+
+  // 开启（或以null关闭）采样分析，本引擎及其派生的任务都会被采样
+  public synchronized void setProfiler(Profiler profiler) {
+    interpreter.setProfiler(profiler);
+  }
+
+  public Diagnostics diagnostics() {
+    return diagnostics;
+  }
+
+  public OutputSink output() {
+    return interpreter.output();
+  }
+
+  public synchronized void setOutput(OutputSink output) {
+    interpreter.setOutput(output);
+  }
+
+  // 写出所有缓冲的输出
+  public void close() {
+    interpreter.output().close();
+  }
+}
@@ -1,45 +1,164 @@
 package com.craftinginterpreters.lox;
 
 import java.util.List;
+import java.util.Map;
 
 class LoxFunction implements LoxCallable {
+  // 紧凑AST中声明的函数没有declaration，函数体是arena中的FUNCTION节点
   private final Stmt.Function declaration;
+  private final AstArena arena;
+  private final int node;
+  private final Token name;
   private final Environment closure;
+  // 函数所在程序的解析结果
+  private final Map<Expr, Integer> locals;
   // 标记LoxFunction是否表示init方法，用户可能自定义同名init函数
   private final boolean isInitializer;
+  // 参数名，bind出来的方法与原函数共用
+  private final String[] params;
 
-  LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+  LoxFunction(Stmt.Function declaration, Environment closure, Map<Expr, Integer> locals,
+              boolean isInitializer) {
+    this(declaration, null, -1, declaration.name, closure, locals, isInitializer, parameterNames(declaration));
+  }
+
+  LoxFunction(AstArena arena, int node, Environment closure, boolean isInitializer) {
+    this(null, arena, node, arena.token(arena.code[node + 1]), closure, null, isInitializer,
+        parameterNames(arena, node));
+  }
+
+  private LoxFunction(Stmt.Function declaration, AstArena arena, int node, Token name, Environment closure,
+                      Map<Expr, Integer> locals, boolean isInitializer, String[] params) {
     this.closure = closure;
+    this.locals = locals;
     this.declaration = declaration;
+    this.arena = arena;
+    this.node = node;
+    this.name = name;
     this.isInitializer = isInitializer;
+    this.params = params;
+  }
+
+  private static String[] parameterNames(Stmt.Function declaration) {
+    String[] names = new String[declaration.params.size()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = declaration.params.get(i).lexeme;
+    }
+    return names;
+  }
+
+  private static String[] parameterNames(AstArena arena, int node) {
+    String[] names = new String[arena.code[node + 2]];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = arena.name(arena.code[node + 3 + i]);
+    }
+    return names;
   }
 
   LoxFunction bind(LoxInstance instance) {
     Environment environment = new Environment(closure);
     environment.define("this", instance);
-    return new LoxFunction(declaration, environment, isInitializer);
+    return new LoxFunction(declaration, arena, node, name, environment, locals, isInitializer, params);
+  }
+
+  // 是否由这个声明创建，用于检查改写时假定的类是否被重定义
+  boolean isDeclaredBy(Stmt.Function declaration) {
+    return this.declaration == declaration;
+  }
+
+  // 函数将在另一个线程上执行，它捕获的环境需要能够并发访问
+  void shareClosure() {
+    closure.share();
   }
 
   public String toString() {
-    return "<fn " + declaration.name.lexeme + ">";
+    return "<fn " + name.lexeme + ">";
   }
 
   @Override
   public int arity() {
-    return declaration.params.size();
+    return params.length;
   }
 
   @Override
   public Object call(Interpreter interpreter, List<Object> arguments) {
-    // 每个函数会维护自己的环境
     Environment environment = new Environment(closure);
-    for (int i = 0; i < declaration.params.size(); i++) {
-      environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    for (int i = 0; i < params.length; i++) {
+      environment.define(params[i], arguments.get(i));
+    }
+    return invoke(interpreter, environment);
+  }
+
+  // 定长的入口直接定义参数，不经过参数列表
+  @Override
+  public Object call0(Interpreter interpreter) {
+    return invoke(interpreter, new Environment(closure));
+  }
+
+  @Override
+  public Object call1(Interpreter interpreter, Object a) {
+    Environment environment = new Environment(closure);
+    environment.define(params[0], a);
+    return invoke(interpreter, environment);
+  }
+
+  @Override
+  public Object call2(Interpreter interpreter, Object a, Object b) {
+    Environment environment = new Environment(closure);
+    environment.define(params[0], a);
+    environment.define(params[1], b);
+    return invoke(interpreter, environment);
+  }
+
+  @Override
+  public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+    Environment environment = new Environment(closure);
+    environment.define(params[0], a);
+    environment.define(params[1], b);
+    environment.define(params[2], c);
+    return invoke(interpreter, environment);
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, Object[] arguments) {
+    Environment environment = new Environment(closure);
+    for (int i = 0; i < params.length; i++) {
+      environment.define(params[i], arguments[i]);
     }
+    return invoke(interpreter, environment);
+  }
+
+  // 在已定义好参数的环境中执行函数体
+  private Object invoke(Interpreter interpreter, Environment environment) {
+    // 开启分析时维护lox调用栈
+    ShadowStack stack = interpreter.stack();
+    if (stack == null) {
+      return execute(interpreter, environment);
+    }
+    stack.push(name.lexeme, name.line);
+    try {
+      return execute(interpreter, environment);
+    }
+    finally {
+      stack.pop();
+    }
+  }
+
+  private Object execute(Interpreter interpreter, Environment environment) {
+    // 函数入口是安全点
+    interpreter.safepoint(name);
+    // 每个函数会维护自己的环境
+    interpreter.allocate(name, ExecutionBudget.ENVIRONMENT_BYTES
+        + (long)ExecutionBudget.VARIABLE_BYTES * params.length);
 
     try {
       // 执行函数
-      interpreter.executeBlock(declaration.body, environment);
+      if (arena != null) {
+        interpreter.arena().executeBody(arena, node, environment);
+      }
+      else {
+        interpreter.executeBlock(declaration.body, environment, locals);
+      }
     }
     catch(Return returnValue) {
       if (isInitializer) {
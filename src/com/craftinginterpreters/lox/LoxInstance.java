@@ -10,6 +10,9 @@ class LoxInstance {
 
   LoxInstance(LoxClass klass) {
     this.klass = klass;
+    if (LoxMetrics.ENABLED) {
+      LoxMetrics.instancesCreated.increment();
+    }
   }
 
   Object get(Token name) {
@@ -24,8 +27,16 @@ class LoxInstance {
     throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
   }
 
-  void set(Token name, Object value) {
-    fields.put(name.lexeme, value);
+  // 只查字段，不存在时返回null
+  Object field(String name) {
+    return fields.get(name);
+  }
+
+  // 返回是否新增了一个字段
+  boolean set(String name, Object value) {
+    boolean added = !fields.containsKey(name);
+    fields.put(name, value);
+    return added;
   }
 
   @Override
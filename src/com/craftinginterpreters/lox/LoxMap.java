@@ -0,0 +1,241 @@
+package com.craftinginterpreters.lox;
+
+
+// 开放寻址（线性探测）的哈希表，键只能是字符串、数字、布尔值或nil，
+// 键的相等性与Interpreter.isEqual保持一致
+class LoxMap implements NativeObject {
+  private static final int MIN_CAPACITY = 8;
+  // nil作为键时的占位符
+  private static final Object NIL_KEY = new Object();
+  // 删除后留下的墓碑，查找时跳过，插入时可以复用
+  private static final Object TOMBSTONE = new Object();
+
+  private Object[] keys = new Object[MIN_CAPACITY];
+  private Object[] values = new Object[MIN_CAPACITY];
+  // 32 - log2(容量)
+  private int shift = 32 - 3;
+  private int size = 0;
+  // 已占用的槽位数（包括墓碑），决定何时扩容
+  private int used = 0;
+  // 修改计数，用于在遍历时检测修改
+  private int modCount = 0;
+  // 探测统计
+  private long lookups = 0;
+  private long probes = 0;
+
+  @Override
+  public Object get(Token name) {
+    switch (name.lexeme) {
+      case "get":
+        return new NativeFunction("get", 1, (interpreter, arguments) ->
+            get(name, arguments.get(0)));
+      case "set":
+        return new NativeFunction("set", 2, (interpreter, arguments) -> {
+          if (put(name, arguments.get(0), arguments.get(1))) {
+            interpreter.allocate(name, ExecutionBudget.MAP_ENTRY_BYTES);
+          }
+          return arguments.get(1);
+        });
+      case "has":
+        return new NativeFunction("has", 1, (interpreter, arguments) ->
+            find(checkKey(name, arguments.get(0))) >= 0);
+      case "delete":
+        return new NativeFunction("delete", 1, (interpreter, arguments) ->
+            remove(name, arguments.get(0)));
+      case "size":
+        return new NativeFunction("size", 0, (interpreter, arguments) -> (double)size);
+      case "forEach":
+        return new NativeFunction("forEach", 1, (interpreter, arguments) -> {
+          forEach(name, interpreter, arguments.get(0));
+          return null;
+        });
+      case "capacity":
+        return new NativeFunction("capacity", 0, (interpreter, arguments) -> (double)keys.length);
+      case "load":
+        return new NativeFunction("load", 0, (interpreter, arguments) -> load());
+      case "probes":
+        return new NativeFunction("probes", 0, (interpreter, arguments) -> averageProbes());
+      case "maxProbe":
+        return new NativeFunction("maxProbe", 0, (interpreter, arguments) -> (double)maxProbe());
+    }
+    throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+  }
+
+  int size() {
+    return size;
+  }
+
+  // 以0..n-1为键，把数组存成Map
+  static LoxMap fromArray(Object[] elements) {
+    LoxMap map = new LoxMap();
+    for (int i = 0; i < elements.length; i++) {
+      map.put(null, (double)i, elements[i]);
+    }
+    return map;
+  }
+
+  // 把键为0..n-1的Map按下标顺序取出
+  Object[] toArray() {
+    Object[] elements = new Object[size];
+    for (int i = 0; i < size; i++) {
+      int slot = find((double)i);
+      if (slot < 0) {
+        throw new RuntimeError("Expected a Map with keys 0 to " + (size - 1) + ".");
+      }
+      elements[i] = values[slot];
+    }
+    return elements;
+  }
+
+  Object get(Token token, Object key) {
+    int slot = find(checkKey(token, key));
+    return slot >= 0 ? values[slot] : null;
+  }
+
+  // 返回是否新增了一个键
+  boolean put(Token token, Object key, Object value) {
+    Object k = checkKey(token, key);
+    int slot = find(k);
+    if (slot >= 0) {
+      values[slot] = value;
+      return false;
+    }
+    // 保证装载因子（包括墓碑）不超过3/4
+    if ((used + 1) * 4 > keys.length * 3) {
+      resize(size * 2 >= keys.length / 2 ? keys.length * 2 : keys.length);
+    }
+    insert(k, value);
+    size++;
+    modCount++;
+    return true;
+  }
+
+  boolean remove(Token token, Object key) {
+    int slot = find(checkKey(token, key));
+    if (slot < 0) {
+      return false;
+    }
+    keys[slot] = TOMBSTONE;
+    values[slot] = null;
+    size--;
+    modCount++;
+    return true;
+  }
+
+  // 按槽位顺序遍历，回调fn(key, value)
+  void forEach(Token token, Interpreter interpreter, Object fn) {
+    if (!(fn instanceof LoxCallable) || ((LoxCallable)fn).arity() != 2) {
+      throw new RuntimeError(token, "forEach expects a function of two arguments.");
+    }
+    LoxCallable callback = (LoxCallable)fn;
+    int expected = modCount;
+    Object[] keys = this.keys;
+    Object[] values = this.values;
+    for (int i = 0; i < keys.length; i++) {
+      Object k = keys[i];
+      if (k == null || k == TOMBSTONE) {
+        continue;
+      }
+      callback.call2(interpreter, k == NIL_KEY ? null : k, values[i]);
+      if (modCount != expected) {
+        throw new RuntimeError(token, "Map modified during iteration.");
+      }
+    }
+  }
+
+  double load() {
+    return (double)size / keys.length;
+  }
+
+  // 自创建以来每次查找的平均探测长度
+  double averageProbes() {
+    return lookups == 0 ? 0 : (double)probes / lookups;
+  }
+
+  // 当前表中离理想槽位最远的键的距离
+  int maxProbe() {
+    int mask = keys.length - 1;
+    int max = 0;
+    for (int i = 0; i < keys.length; i++) {
+      Object k = keys[i];
+      if (k == null || k == TOMBSTONE) {
+        continue;
+      }
+      int distance = (i - slotOf(k)) & mask;
+      max = Math.max(max, distance);
+    }
+    return max;
+  }
+
+  // 只允许值语义的键，否则isEqual的结果会和实例身份有关
+  private Object checkKey(Token token, Object key) {
+    if (key == null) {
+      return NIL_KEY;
+    }
+    // rope先展开，保证与同内容的String散列到同一位置
+    if (key instanceof LoxRope) {
+      return key.toString();
+    }
+    if (key instanceof String || key instanceof Double || key instanceof Boolean) {
+      return key;
+    }
+    throw new RuntimeError(token, "Map keys must be strings, numbers, booleans or nil.");
+  }
+
+  // 斐波那契散列：连续的hashCode（例如"k1"、"k2"）会被打散，避免线性探测时成簇
+  private int slotOf(Object key) {
+    return (key.hashCode() * 0x9E3779B9) >>> shift;
+  }
+
+  // 返回键所在槽位，不存在则返回-1
+  private int find(Object key) {
+    int mask = keys.length - 1;
+    int i = slotOf(key);
+    lookups++;
+    for (;;) {
+      probes++;
+      Object k = keys[i];
+      if (k == null) {
+        return -1;
+      }
+      if (k != TOMBSTONE && k.equals(key)) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+  }
+
+  private void insert(Object key, Object value) {
+    int mask = keys.length - 1;
+    int i = slotOf(key);
+    while (keys[i] != null && keys[i] != TOMBSTONE) {
+      i = (i + 1) & mask;
+    }
+    if (keys[i] == null) {
+      used++;
+    }
+    keys[i] = key;
+    values[i] = value;
+  }
+
+  // 重新散列，同时清除墓碑
+  private void resize(int capacity) {
+    Object[] oldKeys = keys;
+    Object[] oldValues = values;
+    keys = new Object[capacity];
+    values = new Object[capacity];
+    shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    used = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      Object k = oldKeys[i];
+      if (k != null && k != TOMBSTONE) {
+        insert(k, oldValues[i]);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "<map " + size + ">";
+  }
+}
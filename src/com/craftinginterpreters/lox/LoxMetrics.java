@@ -0,0 +1,228 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+// 解释器的运行时计数器和各阶段耗时。
+// 用-Dlox.metrics=true开启，开启后注册到JMX，并作为JFR周期事件记录；
+// 计数点都写成 if (LoxMetrics.ENABLED) ...，关闭时JIT会把它们整个去掉。
+// 各阶段的JFR事件（lox.Phase）不受开关影响，只在JFR记录时才有开销
+final class LoxMetrics implements LoxMetricsMBean {
+  static final boolean ENABLED = Boolean.getBoolean("lox.metrics");
+
+  static final LongAdder functionCalls = new LongAdder();
+  static final LongAdder environmentsAllocated = new LongAdder();
+  static final LongAdder instancesCreated = new LongAdder();
+  static final LongAdder propertyLookups = new LongAdder();
+  // 用于控制流的异常：return和break
+  static final LongAdder controlFlowExceptions = new LongAdder();
+  static final LongAdder stringConcatenations = new LongAdder();
+  // 二元运算的特化路径因类型不符而退回
+  static final LongAdder deoptimizations = new LongAdder();
+
+  enum Phase {
+    SCAN, PARSE, RESOLVE, OPTIMIZE, EXECUTE;
+
+    final LongAdder nanos = new LongAdder();
+  }
+
+  private static final LongAdder programs = new LongAdder();
+
+  static {
+    if (ENABLED) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new LoxMetrics(),
+            new ObjectName("com.craftinginterpreters.lox:type=Metrics"));
+      }
+      catch (JMException e) {
+        // 已经注册过（例如同一个JVM中加载了两次），不影响计数
+      }
+      FlightRecorder.addPeriodicEvent(CountersEvent.class, LoxMetrics::emitCounters);
+    }
+  }
+
+  private LoxMetrics() {}
+
+  // 一个阶段的计时，同时是一个JFR事件
+  static PhaseTimer start(Phase phase) {
+    return new PhaseTimer(phase);
+  }
+
+  static final class PhaseTimer {
+    private final Phase phase;
+    private final long start;
+    private final PhaseEvent event = new PhaseEvent();
+
+    private PhaseTimer(Phase phase) {
+      this.phase = phase;
+      this.start = ENABLED ? System.nanoTime() : 0;
+      event.begin();
+    }
+
+    void stop() {
+      if (ENABLED) {
+        phase.nanos.add(System.nanoTime() - start);
+        if (phase == Phase.EXECUTE) {
+          programs.increment();
+        }
+      }
+      if (event.shouldCommit()) {
+        event.phase = phase.name().toLowerCase();
+        event.commit();
+      }
+    }
+  }
+
+  @Name("lox.Phase")
+  @Label("Lox Phase")
+  @Category("Lox")
+  @Description("One phase of compiling or executing a Lox program")
+  @StackTrace(false)
+  static class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+  }
+
+  @Name("lox.Counters")
+  @Label("Lox Counters")
+  @Category("Lox")
+  @Description("Cumulative interpreter counters")
+  @Period("1 s")
+  @StackTrace(false)
+  static class CountersEvent extends Event {
+    @Label("Function Calls")
+    long functionCalls;
+    @Label("Environments Allocated")
+    long environmentsAllocated;
+    @Label("Instances Created")
+    long instancesCreated;
+    @Label("Property Lookups")
+    long propertyLookups;
+    @Label("Control Flow Exceptions")
+    long controlFlowExceptions;
+    @Label("String Concatenations")
+    long stringConcatenations;
+    @Label("Deoptimizations")
+    long deoptimizations;
+  }
+
+  private static void emitCounters() {
+    CountersEvent event = new CountersEvent();
+    event.functionCalls = functionCalls.sum();
+    event.environmentsAllocated = environmentsAllocated.sum();
+    event.instancesCreated = instancesCreated.sum();
+    event.propertyLookups = propertyLookups.sum();
+    event.controlFlowExceptions = controlFlowExceptions.sum();
+    event.stringConcatenations = stringConcatenations.sum();
+    event.deoptimizations = deoptimizations.sum();
+    event.commit();
+  }
+
+  @Override
+  public long getFunctionCalls() {
+    return functionCalls.sum();
+  }
+
+  @Override
+  public long getEnvironmentsAllocated() {
+    return environmentsAllocated.sum();
+  }
+
+  @Override
+  public long getInstancesCreated() {
+    return instancesCreated.sum();
+  }
+
+  @Override
+  public long getPropertyLookups() {
+    return propertyLookups.sum();
+  }
+
+  @Override
+  public long getControlFlowExceptions() {
+    return controlFlowExceptions.sum();
+  }
+
+  @Override
+  public long getStringConcatenations() {
+    return stringConcatenations.sum();
+  }
+
+  @Override
+  public long getDeoptimizations() {
+    return deoptimizations.sum();
+  }
+
+  @Override
+  public long getScanNanos() {
+    return Phase.SCAN.nanos.sum();
+  }
+
+  @Override
+  public long getParseNanos() {
+    return Phase.PARSE.nanos.sum();
+  }
+
+  @Override
+  public long getResolveNanos() {
+    return Phase.RESOLVE.nanos.sum();
+  }
+
+  @Override
+  public long getOptimizeNanos() {
+    return Phase.OPTIMIZE.nanos.sum();
+  }
+
+  @Override
+  public long getExecuteNanos() {
+    return Phase.EXECUTE.nanos.sum();
+  }
+
+  @Override
+  public long getPrograms() {
+    return programs.sum();
+  }
+
+  @Override
+  public void reset() {
+    functionCalls.reset();
+    environmentsAllocated.reset();
+    instancesCreated.reset();
+    propertyLookups.reset();
+    controlFlowExceptions.reset();
+    stringConcatenations.reset();
+    deoptimizations.reset();
+    programs.reset();
+    for (Phase phase : Phase.values()) {
+      phase.nanos.reset();
+    }
+  }
+
+  // 人可读的汇总，用于命令行的--metrics
+  static String summary() {
+    return "function calls:          " + functionCalls.sum() + "\n"
+        + "environments allocated:  " + environmentsAllocated.sum() + "\n"
+        + "instances created:       " + instancesCreated.sum() + "\n"
+        + "property lookups:        " + propertyLookups.sum() + "\n"
+        + "control flow exceptions: " + controlFlowExceptions.sum() + "\n"
+        + "string concatenations:   " + stringConcatenations.sum() + "\n"
+        + "deoptimizations:         " + deoptimizations.sum() + "\n"
+        + "scan ms:                 " + Phase.SCAN.nanos.sum() / 1_000_000.0 + "\n"
+        + "parse ms:                " + Phase.PARSE.nanos.sum() / 1_000_000.0 + "\n"
+        + "resolve ms:              " + Phase.RESOLVE.nanos.sum() / 1_000_000.0 + "\n"
+        + "optimize ms:             " + Phase.OPTIMIZE.nanos.sum() / 1_000_000.0 + "\n"
+        + "execute ms:              " + Phase.EXECUTE.nanos.sum() / 1_000_000.0 + "\n";
+  }
+}
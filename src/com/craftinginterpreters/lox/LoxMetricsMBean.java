@@ -0,0 +1,19 @@
+package com.craftinginterpreters.lox;
+
+// LoxMetrics在JMX中暴露的属性
+public interface LoxMetricsMBean {
+  long getFunctionCalls();
+  long getEnvironmentsAllocated();
+  long getInstancesCreated();
+  long getPropertyLookups();
+  long getControlFlowExceptions();
+  long getStringConcatenations();
+  long getDeoptimizations();
+  long getScanNanos();
+  long getParseNanos();
+  long getResolveNanos();
+  long getOptimizeNanos();
+  long getExecuteNanos();
+  long getPrograms();
+  void reset();
+}
@@ -0,0 +1,129 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+
+// 一个被导入的源文件，由ModuleCache编译并按引擎缓存。import只把导出的全局变量绑定到模块对象本身，
+// 模块的顶层代码在某个全局作用域中第一次用到这些变量时才执行，见Interpreter.visitVariableExpr
+final class LoxModule {
+  // 已绑定但还没有执行
+  private static final Object PENDING = new Object();
+  private static final Object DONE = new Object();
+  private static final Object FAILED = new Object();
+
+  // 正在某个全局作用域中执行的模块
+  private static final class Running {
+    final Thread thread = Thread.currentThread();
+    final CompletableFuture<Void> finished = new CompletableFuture<>();
+  }
+
+  // 规范化的绝对路径，也是缓存的键
+  final Path path;
+  // 读取失败时为null
+  final Program program;
+  // 顶层声明的变量、函数和类
+  final List<String> exports;
+  // 编译错误
+  final List<Diagnostics.Entry> errors;
+  // 每个全局作用域中的状态：PENDING、Running、DONE或FAILED。只在持有this时访问，
+  // 但模块的代码不在持有this时执行：它可能导入其他模块，或者等待要用到本模块的任务
+  private final Map<GlobalEnvironment, Object> states = new WeakHashMap<>();
+
+  LoxModule(Path path, Program program, List<Diagnostics.Entry> errors) {
+    this.path = path;
+    this.program = program;
+    this.errors = errors;
+    this.exports = new ArrayList<>();
+    if (program == null) {
+      return;
+    }
+    for (Stmt statement : program.statements) {
+      if (statement instanceof Stmt.Var) {
+        exports.add(((Stmt.Var)statement).name.lexeme);
+      }
+      else if (statement instanceof Stmt.Function) {
+        exports.add(((Stmt.Function)statement).name.lexeme);
+      }
+      else if (statement instanceof Stmt.Class) {
+        exports.add(((Stmt.Class)statement).name.lexeme);
+      }
+    }
+  }
+
+  boolean isValid() {
+    return program != null && program.isValid();
+  }
+
+  // 执行import语句：第一次导入时把导出的变量绑定到本模块，再次导入什么也不做
+  synchronized void bind(GlobalEnvironment globals) {
+    if (states.containsKey(globals)) {
+      return;
+    }
+    states.put(globals, PENDING);
+    for (String name : exports) {
+      globals.define(name, this);
+    }
+  }
+
+  // 读到一个仍绑定在本模块上的变量：执行模块的顶层代码，返回变量的新值。
+  // 其他线程同时用到本模块时等待执行结束；正在执行本模块的线程自己用到它时（循环导入）不等待
+  Object force(Interpreter interpreter, Token name) {
+    GlobalEnvironment globals = interpreter.globals;
+    Object state;
+    Running running = null;
+    synchronized (this) {
+      state = states.get(globals);
+      if (state == PENDING) {
+        running = new Running();
+        states.put(globals, running);
+      }
+    }
+    if (running != null) {
+      boolean done = false;
+      try {
+        interpreter.executeModule(program);
+        done = true;
+      }
+      catch (RuntimeError error) {
+        // 错误的位置在本模块中。嵌套导入时保留最内层的模块
+        if (error.token != null && error.file == null) {
+          error.file = path.toString();
+        }
+        throw error;
+      }
+      finally {
+        state = done ? DONE : FAILED;
+        synchronized (this) {
+          states.put(globals, state);
+        }
+        running.finished.complete(null);
+      }
+    }
+    else if (state instanceof Running && ((Running)state).thread != Thread.currentThread()) {
+      ((Running)state).finished.join();
+      synchronized (this) {
+        state = states.get(globals);
+      }
+    }
+
+    Object value = globals.lookup(name.lexeme);
+    if (value != this) {
+      return value;
+    }
+    if (state == FAILED) {
+      throw new RuntimeError(name, "Module '" + path.getFileName() + "' failed to initialize.");
+    }
+    // 循环导入时，模块在定义这个变量之前就用到了它
+    throw new RuntimeError(name, "Variable '" + name.lexeme + "' is used before module '"
+        + path.getFileName() + "' defines it.");
+  }
+
+  @Override
+  public String toString() {
+    return "<module " + path.getFileName() + ">";
+  }
+}
@@ -0,0 +1,14 @@
+package com.craftinginterpreters.lox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// 标记可以注册为lox本地函数的公有静态方法，见LoxEngine.register(Class)。
+// value是lox中的函数名，默认使用方法名；同名的方法作为重载，参数个数必须相同
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface LoxNative {
+  String value() default "";
+}
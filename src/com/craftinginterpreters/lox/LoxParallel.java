@@ -0,0 +1,163 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+// parallelMap/parallelReduce/parallelFor的实现。
+// lox还没有数组，这里把键为0..n-1的Map当作数组使用。
+// 工作按固定大小切块，每块在ForkJoinPool上用自己的解释器执行，
+// 因此结果只与输入有关，与线程数和调度无关
+class LoxParallel {
+  // 每块的元素个数
+  private static final int CHUNK = 64;
+
+  private LoxParallel() {}
+
+  // 按下标顺序返回fn(element)组成的新Map
+  static LoxMap map(Interpreter parent, LoxMap array, LoxCallable fn) {
+    Object[] elements = array.toArray();
+    Object[] results = new Object[elements.length];
+    prepare(parent, fn);
+    ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(split(0, elements.length, (start, end) -> {
+          Interpreter interpreter = new Interpreter(parent);
+          try {
+            for (int i = start; i < end; i++) {
+              results[i] = fn.call1(interpreter, elements[i]);
+            }
+          }
+          finally {
+            interpreter.finish();
+          }
+        }));
+      }
+    });
+    return LoxMap.fromArray(results);
+  }
+
+  // 每块内从左到右归约，块的结果再按从左到右的顺序两两合并，最后与init合并：
+  // fn(init, fn(fn(块0, 块1), fn(块2, 块3)))。fn需要满足结合律
+  static Object reduce(Interpreter parent, LoxMap array, LoxCallable fn, Object init) {
+    Object[] elements = array.toArray();
+    if (elements.length == 0) {
+      return init;
+    }
+    prepare(parent, fn);
+    Object total = ForkJoinPool.commonPool().invoke(new Reduce(parent, elements, fn, 0, elements.length));
+    return combine(parent, fn, init, total);
+  }
+
+  // 在新的子解释器上合并两个结果，用完后结清它的内存统计并注销它的调用栈
+  private static Object combine(Interpreter parent, LoxCallable fn, Object left, Object right) {
+    Interpreter interpreter = new Interpreter(parent);
+    try {
+      return fn.call2(interpreter, left, right);
+    }
+    finally {
+      interpreter.finish();
+    }
+  }
+
+  // 对start <= i < end的每个整数i调用fn(i)，调用顺序不确定
+  static void forEach(Interpreter parent, double start, double end, LoxCallable fn) {
+    long from = (long)Math.ceil(start);
+    long to = (long)Math.ceil(end);
+    if (to <= from) {
+      return;
+    }
+    if (to - from > Integer.MAX_VALUE) {
+      throw new RuntimeError("parallelFor range is too large.");
+    }
+    prepare(parent, fn);
+    int count = (int)(to - from);
+    ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(split(0, count, (first, last) -> {
+          Interpreter interpreter = new Interpreter(parent);
+          try {
+            for (int i = first; i < last; i++) {
+              fn.call1(interpreter, (double)(from + i));
+            }
+          }
+          finally {
+            interpreter.finish();
+          }
+        }));
+      }
+    });
+  }
+
+  private interface Chunk {
+    void run(int start, int end);
+  }
+
+  private static RecursiveAction[] split(int from, int to, Chunk chunk) {
+    int count = (to - from + CHUNK - 1) / CHUNK;
+    RecursiveAction[] actions = new RecursiveAction[count];
+    for (int i = 0; i < count; i++) {
+      int start = from + i * CHUNK;
+      int end = Math.min(to, start + CHUNK);
+      actions[i] = new RecursiveAction() {
+        @Override
+        protected void compute() {
+          chunk.run(start, end);
+        }
+      };
+    }
+    return actions;
+  }
+
+  // 全局变量和fn捕获的环境会被多个工作线程访问
+  private static void prepare(Interpreter parent, LoxCallable fn) {
+    parent.globals.share();
+    if (fn instanceof LoxFunction) {
+      ((LoxFunction)fn).shareClosure();
+    }
+  }
+
+  private static class Reduce extends RecursiveTask<Object> {
+    private final Interpreter parent;
+    private final Object[] elements;
+    private final LoxCallable fn;
+    private final int from;
+    private final int to;
+
+    Reduce(Interpreter parent, Object[] elements, LoxCallable fn, int from, int to) {
+      this.parent = parent;
+      this.elements = elements;
+      this.fn = fn;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Object compute() {
+      if (to - from <= CHUNK) {
+        Interpreter interpreter = new Interpreter(parent);
+        try {
+          Object acc = elements[from];
+          for (int i = from + 1; i < to; i++) {
+            acc = fn.call2(interpreter, acc, elements[i]);
+          }
+          return acc;
+        }
+        finally {
+          interpreter.finish();
+        }
+      }
+      // 在块边界上二分，保证切分方式只取决于元素个数
+      int chunks = (to - from + CHUNK - 1) / CHUNK;
+      int middle = from + (chunks / 2) * CHUNK;
+      Reduce left = new Reduce(parent, elements, fn, from, middle);
+      Reduce right = new Reduce(parent, elements, fn, middle, to);
+      right.fork();
+      Object leftValue = left.compute();
+      Object rightValue = right.join();
+      return combine(parent, fn, leftValue, rightValue);
+    }
+  }
+}
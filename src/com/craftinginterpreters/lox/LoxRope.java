@@ -0,0 +1,184 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+
+// 字符串连接的结果。只记录左右两部分和总长度，在比较、打印或散列时才展开，
+// 这样循环中的 s = s + piece 只需要线性时间。
+// 创建节点时只计入节点本身，展开成完整字符串时才按长度计入创建它的执行的内存配额
+final class LoxRope implements CharSequence {
+  // 总长度小于该值的连接直接生成String，避免产生大量细碎节点
+  static final int FLAT_LIMIT = 32;
+  // 能展开成String的最大长度（JVM数组长度的上限）
+  static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+  private static final class Concat {
+    final CharSequence left;
+    final CharSequence right;
+
+    Concat(CharSequence left, CharSequence right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+
+  // 子串与原字符串共享存储
+  private static final class Slice {
+    final String base;
+    final int start;
+
+    Slice(String base, int start) {
+      this.base = base;
+      this.start = start;
+    }
+  }
+
+  private final int length;
+  // 未展开时为Concat或Slice，展开后为String。只用一个字段保存，
+  // 这样即使多个线程同时展开也只会看到完整的状态
+  private Object content;
+  // 展开时计入的配额，宿主创建的rope为null
+  private final ExecutionBudget budget;
+
+  private LoxRope(int length, Object content, ExecutionBudget budget) {
+    this.length = length;
+    this.content = content;
+    this.budget = budget;
+  }
+
+  static boolean isString(Object object) {
+    return object instanceof String || object instanceof LoxRope;
+  }
+
+  static CharSequence concat(CharSequence left, CharSequence right, ExecutionBudget budget) {
+    if (left.length() == 0) {
+      return right;
+    }
+    if (right.length() == 0) {
+      return left;
+    }
+    // 用long相加，避免溢出成负数后被当作短字符串直接展开。
+    // 没有位置信息，由执行加法的表达式补上
+    long total = (long)left.length() + right.length();
+    if (total > MAX_LENGTH) {
+      throw new RuntimeError("String too long.");
+    }
+    int length = (int)total;
+    if (length < FLAT_LIMIT) {
+      return left.toString() + right;
+    }
+    // 左侧是一个右孩子很短的连接节点时，合并右孩子和新片段，减少节点数量
+    if (left instanceof LoxRope && right.length() < FLAT_LIMIT) {
+      Object leftContent = ((LoxRope)left).content;
+      if (leftContent instanceof Concat) {
+        Concat concat = (Concat)leftContent;
+        if (concat.right.length() + right.length() < FLAT_LIMIT) {
+          return new LoxRope(length, new Concat(concat.left, concat.right.toString() + right), budget);
+        }
+      }
+    }
+    return new LoxRope(length, new Concat(left, right), budget);
+  }
+
+  // 与Interpreter.isEqual语义相同：按内容比较
+  static boolean contentEquals(CharSequence a, CharSequence b) {
+    if (a.length() != b.length()) {
+      return false;
+    }
+    return a.toString().equals(b.toString());
+  }
+
+  @Override
+  public int length() {
+    return length;
+  }
+
+  @Override
+  public char charAt(int index) {
+    Object content = this.content;
+    if (content instanceof Slice) {
+      Slice slice = (Slice)content;
+      return slice.base.charAt(slice.start + index);
+    }
+    return toString().charAt(index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    if (start < 0 || end > length || start > end) {
+      throw new IndexOutOfBoundsException("begin " + start + ", end " + end + ", length " + length);
+    }
+    Object content = this.content;
+    if (content instanceof Slice) {
+      Slice slice = (Slice)content;
+      return new LoxRope(end - start, new Slice(slice.base, slice.start + start), budget);
+    }
+    return new LoxRope(end - start, new Slice(toString(), start), budget);
+  }
+
+  // 第一次展开时计入配额，超出时抛出没有位置信息的ExecutionInterrupted
+  @Override
+  public String toString() {
+    if (budget != null && !(content instanceof String)) {
+      budget.charge(null, ExecutionBudget.STRING_BYTES + 2L * length);
+    }
+    return contents();
+  }
+
+  // 不计入配额地展开，供宿主在执行结束后读取结果
+  String contents() {
+    Object content = this.content;
+    if (content instanceof String) {
+      return (String)content;
+    }
+    String flat;
+    if (content instanceof Slice) {
+      Slice slice = (Slice)content;
+      flat = slice.base.substring(slice.start, slice.start + length);
+    }
+    else {
+      flat = flatten();
+    }
+    this.content = flat;
+    return flat;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    return object instanceof LoxRope && contentEquals(this, (LoxRope)object);
+  }
+
+  @Override
+  public int hashCode() {
+    return toString().hashCode();
+  }
+
+  // 用显式栈遍历，避免长连接链导致栈溢出
+  private String flatten() {
+    char[] chars = new char[length];
+    int position = 0;
+    ArrayDeque<CharSequence> stack = new ArrayDeque<>();
+    stack.push(this);
+    while (!stack.isEmpty()) {
+      CharSequence part = stack.pop();
+      if (part instanceof LoxRope) {
+        Object content = ((LoxRope)part).content;
+        if (content instanceof Concat) {
+          stack.push(((Concat)content).right);
+          stack.push(((Concat)content).left);
+          continue;
+        }
+        if (content instanceof Slice) {
+          Slice slice = (Slice)content;
+          slice.base.getChars(slice.start, slice.start + part.length(), chars, position);
+          position += part.length();
+          continue;
+        }
+        part = (String)content;
+      }
+      String text = (String)part;
+      text.getChars(0, text.length(), chars, position);
+      position += text.length();
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,59 @@
+package com.craftinginterpreters.lox;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+// spawn(fn)返回的任务。fn在自己的虚拟线程上、用自己的解释器执行，
+// 与创建者共享全局变量和闭包
+class LoxTask {
+  private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+  static LoxTask spawn(Interpreter parent, LoxCallable callable) {
+    // 被新线程访问的环境改为同步访问
+    parent.globals.share();
+    if (callable instanceof LoxFunction) {
+      ((LoxFunction)callable).shareClosure();
+    }
+
+    LoxTask task = new LoxTask();
+    Interpreter interpreter = new Interpreter(parent);
+    Thread.ofVirtual().name("lox-task").start(() -> {
+      try {
+        task.result.complete(callable.call0(interpreter));
+      }
+      catch (Throwable error) {
+        task.result.completeExceptionally(error);
+      }
+      finally {
+        interpreter.finish();
+      }
+    });
+    return task;
+  }
+
+  // 等待任务结束并返回fn的返回值。任务中的运行时错误在等待者这里重新抛出
+  Object await() {
+    try {
+      return result.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeError("Interrupted while awaiting a task.");
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new RuntimeError("Task failed: " + cause);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return result.isDone() ? "<task done>" : "<task>";
+  }
+}
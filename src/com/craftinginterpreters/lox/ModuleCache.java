@@ -0,0 +1,98 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 一个引擎加载过的模块。每个文件只读取、解析一次，编译结果可以被任意多个程序导入。
+// 模块在ForkJoinPool上编译，编译完一个模块就开始加载它导入的模块，互相独立的import并行加载
+final class ModuleCache {
+  private final Map<Path, CompletableFuture<LoxModule>> modules = new ConcurrentHashMap<>();
+
+  // 加载程序顶层的import语句直接和间接引用的所有模块，把模块填入import语句。
+  // 相对路径以directory为基准，模块中的相对路径以模块所在的目录为基准。错误报告到diagnostics
+  void link(List<Stmt> statements, Path directory, Diagnostics diagnostics) {
+    List<Stmt.Import> imports = imports(statements, directory);
+    Set<LoxModule> seen = new HashSet<>();
+    Deque<LoxModule> queue = new ArrayDeque<>();
+    for (Stmt.Import stmt : imports) {
+      if (!stmt.module.isValid()) {
+        diagnostics.error(stmt.path, "Cannot import module.");
+      }
+      if (seen.add(stmt.module)) {
+        queue.add(stmt.module);
+      }
+    }
+    // 模块之间可以循环导入，因此在这里逐层等待，而不是在编译模块时等待它导入的模块。
+    // 间接导入的模块有错误时只报告它自己的错误
+    while (!queue.isEmpty()) {
+      LoxModule module = queue.poll();
+      for (Diagnostics.Entry error : module.errors) {
+        diagnostics.error(module.path.toString(), error);
+      }
+      if (!module.isValid()) {
+        continue;
+      }
+      for (Stmt.Import stmt : imports(module.program.statements, module.path.getParent())) {
+        if (seen.add(stmt.module)) {
+          queue.add(stmt.module);
+        }
+      }
+    }
+  }
+
+  // 顶层的import语句，等待它们引用的模块编译完成。嵌套的import由Resolver报错
+  private List<Stmt.Import> imports(List<Stmt> statements, Path directory) {
+    List<Stmt.Import> imports = new ArrayList<>();
+    List<CompletableFuture<LoxModule>> pending = new ArrayList<>();
+    for (Stmt statement : statements) {
+      if (statement instanceof Stmt.Import) {
+        Stmt.Import stmt = (Stmt.Import)statement;
+        imports.add(stmt);
+        pending.add(load(directory.resolve((String)stmt.path.literal)));
+      }
+    }
+    for (int i = 0; i < imports.size(); i++) {
+      imports.get(i).module = pending.get(i).join();
+    }
+    return imports;
+  }
+
+  // 开始加载一个模块，已经加载（或正在加载）的模块直接返回缓存的结果
+  private CompletableFuture<LoxModule> load(Path path) {
+    return modules.computeIfAbsent(path.toAbsolutePath().normalize(),
+        key -> CompletableFuture.supplyAsync(() -> compile(key)));
+  }
+
+  private LoxModule compile(Path path) {
+    String source;
+    try {
+      source = new String(Files.readAllBytes(path), Charset.defaultCharset());
+    }
+    catch (IOException e) {
+      List<Diagnostics.Entry> errors = new ArrayList<>();
+      errors.add(new Diagnostics.Entry(null, 0, "Cannot read module (" + e.getClass().getSimpleName() + ").", false));
+      return new LoxModule(path, null, errors);
+    }
+    Diagnostics diagnostics = new Diagnostics();
+    Program program = LoxEngine.compile(source, diagnostics, false, Optimizer.ENABLED, statements -> {
+      // 只开始加载，不等待：被导入的模块可能正在等待本模块
+      for (Stmt statement : statements) {
+        if (statement instanceof Stmt.Import) {
+          load(path.getParent().resolve((String)((Stmt.Import)statement).path.literal));
+        }
+      }
+    });
+    return new LoxModule(path, program, diagnostics.entries());
+  }
+}
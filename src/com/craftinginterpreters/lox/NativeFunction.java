@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// 用lambda实现的本地函数，也用作本地对象（Map等）的方法，调用时不需要绑定this
+class NativeFunction implements LoxCallable {
+  interface Body {
+    Object call(Interpreter interpreter, List<Object> arguments);
+  }
+
+  private final String name;
+  private final int arity;
+  private final Body body;
+
+  NativeFunction(String name, int arity, Body body) {
+    this.name = name;
+    this.arity = arity;
+    this.body = body;
+  }
+
+  @Override
+  public int arity() {
+    return arity;
+  }
+
+  @Override
+  public Object call(Interpreter interpreter, List<Object> arguments) {
+    return body.call(interpreter, arguments);
+  }
+
+  @Override
+  public String toString() {
+    return "<native fn " + name + ">";
+  }
+}
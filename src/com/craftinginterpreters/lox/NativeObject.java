@@ -0,0 +1,6 @@
+package com.craftinginterpreters.lox;
+
+// 由Java实现的lox对象（Map、Channel等），通过属性访问取得其方法
+interface NativeObject {
+  Object get(Token name);
+}
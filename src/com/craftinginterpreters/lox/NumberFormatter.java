@@ -0,0 +1,84 @@
+package com.craftinginterpreters.lox;
+
+// 把lox数字转换成文本：整数不带小数部分，其余使用能精确还原原值的最短十进制表示，
+// 且从不使用科学计数法。stringify和字符串连接共用这一种格式
+final class NumberFormatter {
+  // 2^53以内的整数可以用long精确表示
+  private static final double EXACT_LONG_LIMIT = 9007199254740992.0;
+
+  private NumberFormatter() {}
+
+  static String format(double value) {
+    StringBuilder out = new StringBuilder(24);
+    format(value, out);
+    return out.toString();
+  }
+
+  static void format(double value, StringBuilder out) {
+    // 整数的快速路径，直接写入缓冲区
+    if (value == (long)value && Math.abs(value) < EXACT_LONG_LIMIT) {
+      if (value == 0 && 1 / value < 0) {
+        out.append('-');
+      }
+      out.append((long)value);
+      return;
+    }
+    if (Double.isNaN(value)) {
+      out.append("NaN");
+      return;
+    }
+    if (Double.isInfinite(value)) {
+      out.append(value > 0 ? "Infinity" : "-Infinity");
+      return;
+    }
+
+    // JDK 19起Double.toString给出的就是最短的可还原位数，这里只需调整写法
+    String text = Double.toString(value);
+    int e = text.indexOf('E');
+    if (e < 0) {
+      out.append(text);
+      return;
+    }
+
+    int start = 0;
+    if (text.charAt(0) == '-') {
+      out.append('-');
+      start = 1;
+    }
+    // 尾数形如d.ddd，去掉小数点和末尾的0之后就是有效数字
+    int end = e;
+    while (end > start + 2 && text.charAt(end - 1) == '0') {
+      end--;
+    }
+    int digitCount = 1 + Math.max(0, end - (start + 2));
+    int exponent = Integer.parseInt(text, e + 1, text.length(), 10);
+    // 小数点前的位数
+    int point = exponent + 1;
+
+    if (point <= 0) {
+      out.append("0.");
+      for (int i = point; i < 0; i++) {
+        out.append('0');
+      }
+      appendDigits(text, start, end, 0, digitCount, out);
+    }
+    else if (point >= digitCount) {
+      appendDigits(text, start, end, 0, digitCount, out);
+      for (int i = digitCount; i < point; i++) {
+        out.append('0');
+      }
+    }
+    else {
+      appendDigits(text, start, end, 0, point, out);
+      out.append('.');
+      appendDigits(text, start, end, point, digitCount, out);
+    }
+  }
+
+  // 追加第from到to个有效数字（跳过尾数中的小数点）
+  private static void appendDigits(String text, int start, int end, int from, int to, StringBuilder out) {
+    for (int i = from; i < to; i++) {
+      out.append(text.charAt(i == 0 ? start : start + 1 + i));
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+// 变量解析之后对语法树的改写。先由ScalarReplacer把不逃逸的简单对象拆成局部变量，
+// 再把几种最常见的形式替换成一步完成的融合节点
+//   i = i + 1      -> LocalIncrement
+//   i < 10         -> LocalCompare
+//   a == b         -> LocalEquals（两边都是局部变量）
+//   p.x = p.x + 1  -> FieldIncrement
+// 融合节点直接保存变量的作用域距离，运行时遇到非数字等情况就执行original，结果与改写前相同。
+// 只改写局部变量：全局变量可能被重定义，也可能在交互模式下跨行使用
+class Optimizer extends AstRewriter {
+  // -Dlox.optimize=false关闭，用于对比改写前后的性能
+  static final boolean ENABLED = !"false".equals(System.getProperty("lox.optimize"));
+
+  // 交互模式下不做标量替换：每行都是很小的程序，类可能在之后的行中被重定义
+  private final boolean interactive;
+
+  Optimizer(Map<Expr, Integer> locals, boolean interactive) {
+    super(locals);
+    this.interactive = interactive;
+  }
+
+  void optimize(List<Stmt> statements) {
+    if (!interactive) {
+      new ScalarReplacer(locals).replace(statements);
+    }
+    rewrite(statements);
+  }
+
+  // 是局部变量时返回其距离，否则返回null
+  private Integer local(Expr expr) {
+    if (expr instanceof Expr.Variable) {
+      return locals.get(expr);
+    }
+    return null;
+  }
+
+  private static boolean isNumber(Expr expr) {
+    return expr instanceof Expr.Literal && ((Expr.Literal)expr).value instanceof Double;
+  }
+
+  private static boolean sameName(Token a, Token b) {
+    return a.lexeme.equals(b.lexeme);
+  }
+
+  // 形如 x + k 或 x - k，x是名为name的局部变量，距离为distance
+  private boolean isStep(Expr expr, Token name, Integer distance) {
+    if (!(expr instanceof Expr.Binary)) {
+      return false;
+    }
+    Expr.Binary binary = (Expr.Binary)expr;
+    return (binary.operator.type == PLUS || binary.operator.type == MINUS)
+        && binary.left instanceof Expr.Variable
+        && sameName(((Expr.Variable)binary.left).name, name)
+        && distance.equals(locals.get(binary.left))
+        && isNumber(binary.right);
+  }
+
+  private static double delta(Expr.Binary binary) {
+    double step = (double)((Expr.Literal)binary.right).value;
+    return binary.operator.type == PLUS ? step : -step;
+  }
+
+  @Override
+  public Expr visitAssignExpr(Expr.Assign expr) {
+    Integer distance = locals.get(expr);
+    if (distance != null && isStep(expr.value, expr.name, distance)) {
+      return new Expr.LocalIncrement(expr.name, distance, delta((Expr.Binary)expr.value), expr);
+    }
+    return super.visitAssignExpr(expr);
+  }
+
+  @Override
+  public Expr visitBinaryExpr(Expr.Binary expr) {
+    switch (expr.operator.type) {
+      case LESS:
+      case LESS_EQUAL:
+      case GREATER:
+      case GREATER_EQUAL:
+      case EQUAL_EQUAL:
+      case BANG_EQUAL: {
+        Integer left = local(expr.left);
+        if (left != null && isNumber(expr.right)) {
+          return new Expr.LocalCompare(((Expr.Variable)expr.left).name, left, expr.operator,
+              (double)((Expr.Literal)expr.right).value, expr);
+        }
+        Integer right = local(expr.right);
+        if (left != null && right != null
+            && (expr.operator.type == EQUAL_EQUAL || expr.operator.type == BANG_EQUAL)) {
+          return new Expr.LocalEquals(((Expr.Variable)expr.left).name, left, expr.operator,
+              ((Expr.Variable)expr.right).name, right, expr);
+        }
+        break;
+      }
+    }
+    return super.visitBinaryExpr(expr);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    // x.f = x.f ± k，x是局部变量
+    Integer distance = local(expr.object);
+    if (distance != null && expr.value instanceof Expr.Binary) {
+      Expr.Binary binary = (Expr.Binary)expr.value;
+      Token object = ((Expr.Variable)expr.object).name;
+      if ((binary.operator.type == PLUS || binary.operator.type == MINUS)
+          && binary.left instanceof Expr.Get && isNumber(binary.right)) {
+        Expr.Get get = (Expr.Get)binary.left;
+        if (sameName(get.name, expr.name) && get.object instanceof Expr.Variable
+            && sameName(((Expr.Variable)get.object).name, object)
+            && distance.equals(locals.get(get.object))) {
+          return new Expr.FieldIncrement(object, distance, expr.name, delta(binary), expr);
+        }
+      }
+    }
+    return super.visitSetExpr(expr);
+  }
+}
@@ -0,0 +1,153 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// print语句的输出目标。解释器把文本直接写进buffer()，每行结束时调用endLine()，
+// 何时真正写出由刷新策略决定
+public abstract class OutputSink {
+  public enum FlushPolicy {
+    // 只在flush()/close()时写出，例如程序退出时
+    ON_EXIT,
+    // 缓冲区超过上限时写出
+    ON_SIZE,
+    // 每行都写出，用于交互模式
+    ON_NEWLINE
+  }
+
+  public static final int DEFAULT_LIMIT = 8192;
+
+  private final StringBuilder buffer = new StringBuilder();
+  private final FlushPolicy policy;
+  private final int limit;
+
+  protected OutputSink(FlushPolicy policy, int limit) {
+    this.policy = policy;
+    this.limit = limit;
+  }
+
+  // 标准输出：交互模式逐行刷新，否则按大小刷新
+  public static OutputSink stdout(boolean interactive) {
+    if (interactive) {
+      return new Stream(System.out, FlushPolicy.ON_NEWLINE, DEFAULT_LIMIT);
+    }
+    return new Stream(System.out, FlushPolicy.ON_SIZE, DEFAULT_LIMIT);
+  }
+
+  StringBuilder buffer() {
+    return buffer;
+  }
+
+  void endLine() {
+    buffer.append('\n');
+    if (policy == FlushPolicy.ON_NEWLINE
+        || (policy == FlushPolicy.ON_SIZE && buffer.length() >= limit)) {
+      flush();
+    }
+  }
+
+  public void flush() {
+    if (buffer.length() > 0) {
+      drain(buffer);
+      buffer.setLength(0);
+    }
+  }
+
+  public void close() {
+    flush();
+  }
+
+  // 把缓冲的文本交给底层目标
+  protected abstract void drain(CharSequence text);
+
+  // 写到一个字节流，例如System.out或文件
+  public static class Stream extends OutputSink {
+    private final OutputStream out;
+    private final Charset charset;
+
+    public Stream(OutputStream out, FlushPolicy policy, int limit) {
+      super(policy, limit);
+      this.out = out;
+      this.charset = Charset.defaultCharset();
+    }
+
+    @Override
+    protected void drain(CharSequence text) {
+      try {
+        out.write(text.toString().getBytes(charset));
+        out.flush();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  // 保存在内存中，宿主程序可以在执行结束后取出全部输出
+  public static class Memory extends OutputSink {
+    private final StringBuilder contents = new StringBuilder();
+
+    public Memory() {
+      super(FlushPolicy.ON_EXIT, DEFAULT_LIMIT);
+    }
+
+    @Override
+    protected void drain(CharSequence text) {
+      contents.append(text);
+    }
+
+    public String contents() {
+      flush();
+      return contents.toString();
+    }
+  }
+
+  // 写到NIO通道，例如文件通道
+  public static class Channel extends OutputSink {
+    private final WritableByteChannel channel;
+    private final Charset charset;
+
+    public Channel(WritableByteChannel channel, FlushPolicy policy, int limit) {
+      super(policy, limit);
+      this.channel = channel;
+      this.charset = Charset.defaultCharset();
+    }
+
+    public static Channel open(Path path) throws IOException {
+      FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      return new Channel(channel, FlushPolicy.ON_SIZE, DEFAULT_LIMIT);
+    }
+
+    @Override
+    protected void drain(CharSequence text) {
+      ByteBuffer bytes = charset.encode(text.toString());
+      try {
+        while (bytes.hasRemaining()) {
+          channel.write(bytes);
+        }
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      super.close();
+      try {
+        channel.close();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -6,16 +6,16 @@ import java.util.Arrays;
 import java.util.Stack;
 
 import static com.craftinginterpreters.lox.TokenType.*;
-import static com.craftinginterpreters.lox.lox.isPrompt;
 
 public class Parser {
 //  program        → declaration* EOF
-//  declaration    → classDecl | funDecl | varDecl | statement
+//  declaration    → classDecl | funDecl | varDecl | importDecl | statement
 //  classDecl      ->"class" IDENTIFIER "{" function* "}";
 //  funDecl        → "fun" function
 //  function       → IDENTIFIER "(" parameters? ")" block
 //  parameters     → IDENTIFIER ( "," IDENTIFIER )*
 //  varDecl        → "var" IDENTIFIER ( "=" expression )? ";"
+//  importDecl     → "import" STRING ";"
 //  statement      → exprStmt
 //               | ifStmt
 //               | printStmt
@@ -48,17 +48,22 @@ public class Parser {
 //  unary          → ( "!" | "-" ) unary | call
 //  call           → primary ( "(" arguments? ")" | "." IDENTIFIER)*
 //  primary        → NUMBER | STRING | "true" | "false" | "nil" | "(" expression ")" | IDENTIFIER;
-//  arguments      → expression ( "," expression )*
+//  arguments      → assignment ( "," assignment )*
 
   // 哨兵类，返回错误
   private static class ParseError extends RuntimeException {}
   private final List<Token> tokens;
+  private final Diagnostics diagnostics;
+  // 交互模式下表达式语句可以省略分号
+  private final boolean isPrompt;
   // 扫描器会消费token，current指向下一个待解析的标记
   private int current = 0;
   private final Stack<Boolean> inLoop = new Stack<>();
 
-  Parser(List<Token> tokens) {
+  Parser(List<Token> tokens, Diagnostics diagnostics, boolean isPrompt) {
     this.tokens = tokens;
+    this.diagnostics = diagnostics;
+    this.isPrompt = isPrompt;
   }
 
   List<Stmt> parse() {
@@ -84,6 +89,9 @@ public class Parser {
       if (match(VAR)) {
         return varDeclaration();
       }
+      if (match(IMPORT)) {
+        return importDeclaration();
+      }
       return statement();
     }
     catch (ParseError error) {
@@ -190,15 +198,24 @@ public class Parser {
     return new Stmt.Var(name, initializer);
   }
 
+  private Stmt importDeclaration() {
+    Token keyword = previous();
+    Token path = consume(STRING, "Expect module path after 'import'.");
+    consume(SEMICOLON, "Expect ';' after module path.");
+    return new Stmt.Import(keyword, path);
+  }
+
   private Stmt whileStatement() {
+    Token keyword = previous();
     consume(LEFT_PAREN, "Expect '(' after 'while'.");
     Expr condition = expression();
     consume(RIGHT_PAREN, "Expect ')' after condition.");
     Stmt body = statement();
-    return new Stmt.While(condition, body);
+    return new Stmt.While(keyword, condition, body);
   }
 
   private Stmt forStatement() {
+    Token keyword = previous();
     consume(LEFT_PAREN, "Expect '(' after 'for'.");
     Stmt initializer;
     if (match(SEMICOLON)) {
@@ -232,7 +249,7 @@ public class Parser {
     if (condition == null) {
       condition = new Expr.Literal(true);
     }
-    body = new Stmt.While(condition, body);
+    body = new Stmt.While(keyword, condition, body);
     // 如果有初始化式，再次构建一个代码块
     if (initializer != null) {
       body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -439,7 +456,8 @@ public class Parser {
         if (arguments.size() >= 255) {
           error(peek(), "Can't have more than 255 arguments.");
         }
-        arguments.add(expression());
+        // 参数之间的逗号是分隔符而不是逗号表达式
+        arguments.add(assignment());
       } while (match(COMMA));
     }
 
@@ -522,7 +540,7 @@ public class Parser {
   }
 
   private ParseError error(Token token, String message) {
-    lox.error(token, message);
+    diagnostics.error(token, message);
     return new ParseError();
   }
 
@@ -537,6 +555,7 @@ public class Parser {
         case CLASS:
         case FUN:
         case VAR:
+        case IMPORT:
         case FOR:
         case IF:
         case WHILE:
@@ -0,0 +1,119 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+// 采样分析器：后台线程按固定间隔读取各解释器的ShadowStack，
+// 统计折叠栈的出现次数，可以输出给flamegraph.pl，也可以输出按函数汇总的自身/总时间表
+public class Profiler {
+  private final long intervalNanos;
+  private final List<ShadowStack> stacks = new CopyOnWriteArrayList<>();
+  // 只由采样线程写入，stop()之后才读取
+  private final Map<String, Long> samples = new HashMap<>();
+  private long sampleCount = 0;
+  private volatile boolean running = false;
+  private Thread sampler;
+
+  public Profiler(long intervalMicros) {
+    this.intervalNanos = intervalMicros * 1000;
+  }
+
+  public Profiler() {
+    this(1000);
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    sampler = Thread.ofPlatform().daemon().name("lox-profiler").start(() -> {
+      while (running) {
+        LockSupport.parkNanos(intervalNanos);
+        sample();
+      }
+    });
+  }
+
+  public synchronized void stop() {
+    if (!running) {
+      return;
+    }
+    running = false;
+    try {
+      sampler.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  void register(ShadowStack stack) {
+    stacks.add(stack);
+  }
+
+  void unregister(ShadowStack stack) {
+    stacks.remove(stack);
+  }
+
+  private void sample() {
+    for (ShadowStack stack : stacks) {
+      samples.merge(stack.fold(), 1L, Long::sum);
+      sampleCount++;
+    }
+  }
+
+  // 折叠格式：每行是“帧;帧;帧 次数”
+  public void writeFolded(Writer out) throws IOException {
+    List<String> keys = new ArrayList<>(samples.keySet());
+    keys.sort(null);
+    for (String key : keys) {
+      out.write(key + " " + samples.get(key) + "\n");
+    }
+    out.flush();
+  }
+
+  // 每个函数的自身时间（位于栈顶）和总时间（出现在栈中），按总时间排序
+  public void writeTable(Writer out) throws IOException {
+    Map<String, Long> self = new HashMap<>();
+    Map<String, Long> total = new HashMap<>();
+    for (Map.Entry<String, Long> entry : samples.entrySet()) {
+      String[] frames = entry.getKey().split(";");
+      long count = entry.getValue();
+      self.merge(function(frames[frames.length - 1]), count, Long::sum);
+      // 递归函数在一个样本中只计一次
+      Set<String> seen = new HashSet<>();
+      for (String frame : frames) {
+        if (seen.add(function(frame))) {
+          total.merge(function(frame), count, Long::sum);
+        }
+      }
+    }
+
+    List<String> functions = new ArrayList<>(total.keySet());
+    functions.sort((a, b) -> Long.compare(total.get(b), total.get(a)));
+    double millis = intervalNanos / 1_000_000.0;
+    out.write(String.format("%-30s %10s %10s %8s %8s%n", "function", "self ms", "total ms", "self %", "total %"));
+    for (String function : functions) {
+      long s = self.getOrDefault(function, 0L);
+      long t = total.get(function);
+      out.write(String.format("%-30s %10.1f %10.1f %7.1f%% %7.1f%%%n", function, s * millis, t * millis,
+          100.0 * s / sampleCount, 100.0 * t / sampleCount));
+    }
+    out.flush();
+  }
+
+  // 去掉帧中的行号
+  private static String function(String frame) {
+    int colon = frame.lastIndexOf(':');
+    return colon < 0 ? frame : frame.substring(0, colon);
+  }
+}
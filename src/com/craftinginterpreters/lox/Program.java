@@ -0,0 +1,34 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// 经过扫描、解析和变量解析的程序。编译后不再修改，可以被执行任意多次
+public final class Program {
+  final List<Stmt> statements;
+  // 局部变量表达式到其所在作用域距离的映射，由Resolver填写
+  final Map<Expr, Integer> locals;
+  // 编码成紧凑AST的程序，此时不保留语法树和解析结果
+  final AstArena arena;
+  private final boolean valid;
+
+  Program(List<Stmt> statements, Map<Expr, Integer> locals, boolean valid) {
+    this.statements = statements;
+    this.locals = locals;
+    this.arena = null;
+    this.valid = valid;
+  }
+
+  Program(AstArena arena) {
+    this.statements = Collections.emptyList();
+    this.locals = Collections.emptyMap();
+    this.arena = arena;
+    this.valid = true;
+  }
+
+  // 编译时没有报告错误
+  public boolean isValid() {
+    return valid;
+  }
+}
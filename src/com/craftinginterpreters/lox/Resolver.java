@@ -6,13 +6,16 @@ import java.util.Map;
 import java.util.Stack;
 
 class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-  private final Interpreter interpreter;
+  // 解析结果写入这张表，随Program一起保存
+  private final Map<Expr, Integer> locals;
+  private final Diagnostics diagnostics;
   private final Stack<Map<String, Variable>> scopes = new Stack<>();
   private FunctionType currentFunction = FunctionType.NONE;
   private ClassType currentClass = ClassType.NONE;
 
-  Resolver(Interpreter interpreter) {
-    this.interpreter = interpreter;
+  Resolver(Map<Expr, Integer> locals, Diagnostics diagnostics) {
+    this.locals = locals;
+    this.diagnostics = diagnostics;
   }
 
   private enum FunctionType {
@@ -117,11 +120,11 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitReturnStmt(Stmt.Return stmt) {
     if (currentFunction == FunctionType.NONE) {
-      lox.error(stmt.keyword, "Can't return from top-level code.");
+      diagnostics.error(stmt.keyword, "Can't return from top-level code.");
     }
     if (stmt.value != null) {
       if (currentFunction == FunctionType.INITIALIZER) {
-        lox.error(stmt.keyword, "Can't return a value from an initializer.");
+        diagnostics.error(stmt.keyword, "Can't return a value from an initializer.");
       }
       resolve(stmt.value);
     }
@@ -150,6 +153,15 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  @Override
+  public Void visitImportStmt(Stmt.Import stmt) {
+    // 模块导出的是全局变量，只能在顶层导入
+    if (!scopes.isEmpty()) {
+      diagnostics.error(stmt.keyword, "Can only import at top level.");
+    }
+    return null;
+  }
+
   @Override
   public Void visitAssignExpr(Expr.Assign expr) {
     // 解析右侧表达式
@@ -198,6 +210,49 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     return null;
   }
 
+  // 融合节点由Optimizer在变量解析之后生成，自带距离，只需要解析退回时执行的原表达式
+  @Override
+  public Void visitLocalIncrementExpr(Expr.LocalIncrement expr) {
+    resolve(expr.original);
+    return null;
+  }
+
+  @Override
+  public Void visitLocalCompareExpr(Expr.LocalCompare expr) {
+    resolve(expr.original);
+    return null;
+  }
+
+  @Override
+  public Void visitLocalEqualsExpr(Expr.LocalEquals expr) {
+    resolve(expr.original);
+    return null;
+  }
+
+  @Override
+  public Void visitFieldIncrementExpr(Expr.FieldIncrement expr) {
+    resolve(expr.original);
+    return null;
+  }
+
+  @Override
+  public Void visitScalarNewExpr(Expr.ScalarNew expr) {
+    resolve(expr.original);
+    return null;
+  }
+
+  @Override
+  public Void visitScalarGetExpr(Expr.ScalarGet expr) {
+    resolve(expr.original);
+    return null;
+  }
+
+  @Override
+  public Void visitScalarSetExpr(Expr.ScalarSet expr) {
+    resolve(expr.original);
+    return null;
+  }
+
 
   @Override
   public Void visitGroupingExpr(Expr.Grouping expr) {
@@ -227,7 +282,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   @Override
   public Void visitThisExpr(Expr.This expr) {
     if (currentClass == ClassType.NONE) {
-      lox.error(expr.keyword, "Can't use 'this' outside of a class.");
+      diagnostics.error(expr.keyword, "Can't use 'this' outside of a class.");
     }
     resolveLocal(expr, expr.keyword, true);
     return null;
@@ -243,7 +298,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   public Void visitVariableExpr(Expr.Variable expr) {
     if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme)
         &&scopes.peek().get(expr.name.lexeme).state == VariableState.DECLARED) {
-      lox.error(expr.name, "Can't read local variable in its own initializer.");
+      diagnostics.error(expr.name, "Can't read local variable in its own initializer.");
     }
 
     resolveLocal(expr, expr.name, true);
@@ -281,7 +336,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     for (Map.Entry<String, Variable> entry : scope.entrySet()) {
       if (entry.getValue().state == VariableState.DEFINED) {
-        lox.error(entry.getValue().name, "Local variable is not used.");
+        diagnostics.error(entry.getValue().name, "Local variable is not used.");
       }
     }
   }
@@ -293,7 +348,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     Map<String, Variable> scope = scopes.peek();
     if (scope.containsKey(name.lexeme)) {
-      lox.error(name, "Already variable with this name in this scope.");
+      diagnostics.error(name, "Already variable with this name in this scope.");
     }
     // false表示此处还未完成变量声明
     scope.put(name.lexeme, new Variable(name, VariableState.DECLARED));
@@ -310,7 +365,7 @@ class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
   private void resolveLocal(Expr expr, Token name, boolean isRead) {
     for (int i = scopes.size() - 1; i >= 0; i--) {
       if (scopes.get(i).containsKey(name.lexeme)) {
-        interpreter.resolve(expr, scopes.size() - 1 - i);
+        locals.put(expr, scopes.size() - 1 - i);
 
         // 标记变量已读
         if (isRead) {
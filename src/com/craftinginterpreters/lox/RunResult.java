@@ -0,0 +1,60 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// ScriptExecutor一次运行的结果
+public final class RunResult {
+  private final boolean succeeded;
+  private final String output;
+  private final List<String> errors;
+  private final long nanos;
+  private final long allocatedBytes;
+  // 运行结束时的全局环境，用于读取脚本留下的结果变量
+  private final Environment globals;
+
+  RunResult(boolean succeeded, String output, List<String> errors, long nanos, long allocatedBytes,
+            Environment globals) {
+    this.succeeded = succeeded;
+    this.output = output;
+    this.errors = errors;
+    this.nanos = nanos;
+    this.allocatedBytes = allocatedBytes;
+    this.globals = globals;
+  }
+
+  // 没有发生运行时错误
+  public boolean succeeded() {
+    return succeeded;
+  }
+
+  // print语句的全部输出
+  public String output() {
+    return output;
+  }
+
+  public List<String> errors() {
+    return errors;
+  }
+
+  public long elapsedNanos() {
+    return nanos;
+  }
+
+  // 运行时代替脚本分配的字节数（估计值）
+  public long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  // 读取一个全局变量，字符串统一以String返回，未定义时返回null。
+  // 运行已经结束，不再执行模块，因此导入后一直没有用到的模块变量没有值
+  public Object global(String name) {
+    Object value = globals.lookup(name);
+    if (value instanceof LoxModule) {
+      throw new IllegalStateException("'" + name + "' is bound to " + value + ", which never ran.");
+    }
+    if (value instanceof LoxRope) {
+      return ((LoxRope)value).contents();
+    }
+    return value;
+  }
+}
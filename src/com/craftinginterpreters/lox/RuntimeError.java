@@ -2,9 +2,21 @@ package com.craftinginterpreters.lox;
 
 class RuntimeError extends RuntimeException {
   final Token token;
+  // token所在的模块文件，主程序中的错误为null。由LoxModule在错误离开模块时设置
+  String file;
 
   RuntimeError(Token token, String message) {
     super(message);
     this.token = token;
   }
+
+  // 本地函数不知道调用位置，由visitCallExpr补上调用处的token
+  RuntimeError(String message) {
+    this(null, message);
+  }
+
+  // 补上位置信息后的同类错误
+  RuntimeError at(Token token) {
+    return new RuntimeError(token, getMessage());
+  }
 }
\ No newline at end of file
@@ -0,0 +1,275 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// 标量替换：函数中 var p = Point(x, y) 创建的对象如果只被用来读写字段，
+// 就不再创建LoxInstance，而是把字段保存在与p同一作用域的隐藏局部变量"p.x"、"p.y"中，
+// p本身的值是构造它的ScalarNew节点。
+// 只处理简单的类：在程序顶层只声明一次，init的函数体只有 this.f = 参数。
+// 类在运行时可能被重定义，所以ScalarNew执行时会检查类的init是否仍是这个声明，不是就正常创建对象；
+// ScalarGet/ScalarSet也只在变量的值是自己的ScalarNew节点时才读写隐藏变量，否则执行原表达式
+class ScalarReplacer extends AstRewriter {
+  // 可以拆开的类
+  private static final class Shape {
+    final Stmt.Function initializer;
+    // 按init中赋值的顺序，每个字段及其取自第几个参数
+    final List<String> fields = new ArrayList<>();
+    final List<Integer> sources = new ArrayList<>();
+
+    Shape(Stmt.Function initializer) {
+      this.initializer = initializer;
+    }
+  }
+
+  private final Map<String, Shape> shapes = new HashMap<>();
+  // 正在改写的函数（及其外围函数）中被拆开的变量
+  private Map<String, Expr.ScalarNew> active = new HashMap<>();
+
+  ScalarReplacer(Map<Expr, Integer> locals) {
+    super(locals);
+  }
+
+  void replace(List<Stmt> statements) {
+    findShapes(statements);
+    if (!shapes.isEmpty()) {
+      rewrite(statements);
+    }
+  }
+
+  private void findShapes(List<Stmt> statements) {
+    Set<String> repeated = new HashSet<>();
+    for (Stmt statement : statements) {
+      if (!(statement instanceof Stmt.Class)) {
+        continue;
+      }
+      Stmt.Class klass = (Stmt.Class)statement;
+      if (shapes.containsKey(klass.name.lexeme) || repeated.contains(klass.name.lexeme)) {
+        shapes.remove(klass.name.lexeme);
+        repeated.add(klass.name.lexeme);
+        continue;
+      }
+      Shape shape = shape(klass);
+      if (shape != null) {
+        shapes.put(klass.name.lexeme, shape);
+      }
+    }
+  }
+
+  // init只由 this.f = 参数 组成时返回其形状
+  private Shape shape(Stmt.Class klass) {
+    Stmt.Function initializer = null;
+    for (Stmt.Function method : klass.methods) {
+      if (method.name.lexeme.equals("init")) {
+        if (initializer != null) {
+          return null;
+        }
+        initializer = method;
+      }
+    }
+    if (initializer == null) {
+      return null;
+    }
+
+    Shape shape = new Shape(initializer);
+    for (Stmt statement : initializer.body) {
+      if (!(statement instanceof Stmt.Expression)
+          || !(((Stmt.Expression)statement).expression instanceof Expr.Set)) {
+        return null;
+      }
+      Expr.Set set = (Expr.Set)((Stmt.Expression)statement).expression;
+      if (!(set.object instanceof Expr.This) || !(set.value instanceof Expr.Variable)) {
+        return null;
+      }
+      Expr.Variable value = (Expr.Variable)set.value;
+      int source = parameter(initializer, value.name.lexeme);
+      if (source < 0 || !Integer.valueOf(0).equals(locals.get(value))) {
+        return null;
+      }
+      shape.fields.add(set.name.lexeme);
+      shape.sources.add(source);
+    }
+    return shape;
+  }
+
+  private static int parameter(Stmt.Function function, String name) {
+    for (int i = 0; i < function.params.size(); i++) {
+      if (function.params.get(i).lexeme.equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  void rewriteFunction(Stmt.Function function) {
+    Map<String, Expr.ScalarNew> enclosing = active;
+    active = new HashMap<>(enclosing);
+    active.putAll(analyze(function));
+    try {
+      super.rewriteFunction(function);
+    }
+    finally {
+      active = enclosing;
+    }
+  }
+
+  @Override
+  public Stmt visitVarStmt(Stmt.Var stmt) {
+    Expr.ScalarNew site = active.get(stmt.name.lexeme);
+    if (site != null && stmt.initializer == site.original) {
+      rewriteAll(site.original.arguments);
+      return new Stmt.Var(stmt.name, site);
+    }
+    return super.visitVarStmt(stmt);
+  }
+
+  @Override
+  public Expr visitGetExpr(Expr.Get expr) {
+    Expr.ScalarNew site = site(expr.object);
+    if (site != null) {
+      Token object = ((Expr.Variable)expr.object).name;
+      return new Expr.ScalarGet(object, locals.get(expr.object), hidden(object, expr.name), site, expr);
+    }
+    return super.visitGetExpr(expr);
+  }
+
+  @Override
+  public Expr visitSetExpr(Expr.Set expr) {
+    Expr.ScalarNew site = site(expr.object);
+    if (site != null) {
+      Token object = ((Expr.Variable)expr.object).name;
+      return new Expr.ScalarSet(object, locals.get(expr.object), hidden(object, expr.name),
+          rewrite(expr.value), site, expr);
+    }
+    return super.visitSetExpr(expr);
+  }
+
+  // object是被拆开的局部变量时返回构造它的节点
+  private Expr.ScalarNew site(Expr object) {
+    if (!(object instanceof Expr.Variable) || locals.get(object) == null) {
+      return null;
+    }
+    return active.get(((Expr.Variable)object).name.lexeme);
+  }
+
+  // 不会与用户的变量名冲突
+  private static String hidden(Token object, Token field) {
+    return object.lexeme + "." + field.lexeme;
+  }
+
+  // 找出函数中可以拆开的变量：只声明一次，初始化为简单类的构造调用，
+  // 包括嵌套函数在内的所有使用都是读写init中的字段，也没有被重新赋值
+  private Map<String, Expr.ScalarNew> analyze(Stmt.Function function) {
+    Uses uses = new Uses(locals);
+    for (Token param : function.params) {
+      uses.declare(param.lexeme);
+    }
+    uses.rewrite(function.body);
+
+    Map<String, Expr.ScalarNew> sites = new HashMap<>();
+    for (Map.Entry<String, Stmt.Var> candidate : uses.candidates.entrySet()) {
+      String name = candidate.getKey();
+      Expr.Call call = (Expr.Call)candidate.getValue().initializer;
+      Shape shape = shapes.get(((Expr.Variable)call.callee).name.lexeme);
+      if (uses.declarations.get(name) != 1 || uses.escaped.contains(name)
+          || !shape.fields.containsAll(uses.fields.getOrDefault(name, new HashSet<>()))) {
+        continue;
+      }
+      List<String> hidden = new ArrayList<>();
+      for (String field : shape.fields) {
+        hidden.add(name + "." + field);
+      }
+      sites.put(name, new Expr.ScalarNew(candidate.getValue().name, call, shape.initializer,
+          hidden, shape.sources));
+    }
+    return sites;
+  }
+
+  // 只收集信息，不改写
+  private final class Uses extends AstRewriter {
+    final Map<String, Integer> declarations = new HashMap<>();
+    final Map<String, Stmt.Var> candidates = new HashMap<>();
+    // 每个变量被读写的字段
+    final Map<String, Set<String>> fields = new HashMap<>();
+    // 以字段访问之外的方式使用过的变量
+    final Set<String> escaped = new HashSet<>();
+
+    Uses(Map<Expr, Integer> locals) {
+      super(locals);
+    }
+
+    void declare(String name) {
+      declarations.merge(name, 1, Integer::sum);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+      declare(stmt.name.lexeme);
+      if (stmt.initializer instanceof Expr.Call) {
+        Expr.Call call = (Expr.Call)stmt.initializer;
+        if (call.callee instanceof Expr.Variable && locals.get(call.callee) == null) {
+          Shape shape = shapes.get(((Expr.Variable)call.callee).name.lexeme);
+          if (shape != null && call.arguments.size() == shape.initializer.params.size()) {
+            candidates.put(stmt.name.lexeme, stmt);
+          }
+        }
+      }
+      return super.visitVarStmt(stmt);
+    }
+
+    @Override
+    void rewriteFunction(Stmt.Function function) {
+      declare(function.name.lexeme);
+      for (Token param : function.params) {
+        declare(param.lexeme);
+      }
+      super.rewriteFunction(function);
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+      declare(stmt.name.lexeme);
+      return super.visitClassStmt(stmt);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+      if (expr.object instanceof Expr.Variable) {
+        use(((Expr.Variable)expr.object).name, expr.name);
+        return expr;
+      }
+      return super.visitGetExpr(expr);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+      if (expr.object instanceof Expr.Variable) {
+        use(((Expr.Variable)expr.object).name, expr.name);
+        rewrite(expr.value);
+        return expr;
+      }
+      return super.visitSetExpr(expr);
+    }
+
+    private void use(Token object, Token field) {
+      fields.computeIfAbsent(object.lexeme, name -> new HashSet<>()).add(field.lexeme);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+      escaped.add(expr.name.lexeme);
+      return expr;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+      escaped.add(expr.name.lexeme);
+      return super.visitAssignExpr(expr);
+    }
+  }
+}
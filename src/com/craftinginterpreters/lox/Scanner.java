@@ -9,6 +9,7 @@ import static com.craftinginterpreters.lox.TokenType.*;
 
 class Scanner {
   private final String source;
+  private final Diagnostics diagnostics;
   private final List<Token> tokens = new ArrayList<>();
   // start指向被扫描词素的第一个字符，current指向正在处理的字符
   private int start = 0;
@@ -36,10 +37,12 @@ class Scanner {
     keywords.put("var",    VAR);
     keywords.put("while",  WHILE);
     keywords.put("break",  BREAK);
+    keywords.put("import", IMPORT);
   }
 
-  Scanner(String source) {
+  Scanner(String source, Diagnostics diagnostics) {
     this.source = source;
+    this.diagnostics = diagnostics;
   }
 
   List <Token> scanTokens(){
@@ -119,7 +122,7 @@ class Scanner {
           identifier();
         }
         else {
-          lox.error(line, "Unexpected character.");
+          diagnostics.error(line, "Unexpected character.");
         }
         break;
     }
@@ -148,7 +151,7 @@ class Scanner {
         pre++;
       }
       else if (isAtEnd()) {
-        lox.error(line, "Unclosed comment.");
+        diagnostics.error(line, "Unclosed comment.");
         return;
       }
       else {
@@ -195,7 +198,7 @@ class Scanner {
       advance();
     }
     if (isAtEnd()){
-      lox.error(line, "Unterminated string.");
+      diagnostics.error(line, "Unterminated string.");
       return;
     }
     // 处理右引号
@@ -0,0 +1,105 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// 在虚拟线程上并发地多次运行同一个编译好的程序。
+// 语法树和解析结果在各次运行之间共享，每次运行只新建自己的解释器（全局变量、调用栈）和输出
+public class ScriptExecutor implements AutoCloseable {
+  private final ExecutorService executor;
+
+  public ScriptExecutor() {
+    this(Executors.newVirtualThreadPerTaskExecutor());
+  }
+
+  public ScriptExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  // 提交一次运行，inputs会在执行前定义为全局变量。输入按JavaFunction的规则转换为lox值：
+  // 数字变为Double，字符和字符串变为String；其他类型在lox中不能使用，直接拒绝
+  public Future<RunResult> submit(Program program, Map<String, Object> inputs) {
+    return submit(program, inputs, new ExecutionBudget());
+  }
+
+  // 在给定的燃料、期限内运行
+  public Future<RunResult> submit(Program program, Map<String, Object> inputs, ExecutionBudget budget) {
+    if (!program.isValid()) {
+      throw new IllegalArgumentException("Program has compile errors.");
+    }
+    Map<String, Object> values = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> input : inputs.entrySet()) {
+      values.put(input.getKey(), toLox(input.getKey(), input.getValue()));
+    }
+    return executor.submit(() -> run(program, values, budget));
+  }
+
+  private static Object toLox(String name, Object value) {
+    if (value instanceof CharSequence && !(value instanceof LoxRope)) {
+      return value.toString();
+    }
+    Object converted = JavaFunction.toLox(value);
+    if (converted == null || converted instanceof Double || converted instanceof Boolean
+        || LoxRope.isString(converted)) {
+      return converted;
+    }
+    throw new IllegalArgumentException("Input '" + name + "' has unsupported type "
+        + value.getClass().getName() + ".");
+  }
+
+  public Future<RunResult> submit(Program program) {
+    return submit(program, Collections.emptyMap());
+  }
+
+  // 对每组输入运行一次程序，结果按输入的顺序返回
+  public List<RunResult> runAll(Program program, List<Map<String, Object>> inputs)
+      throws InterruptedException {
+    List<Future<RunResult>> futures = new ArrayList<>(inputs.size());
+    for (Map<String, Object> input : inputs) {
+      futures.add(submit(program, input));
+    }
+    List<RunResult> results = new ArrayList<>(futures.size());
+    for (Future<RunResult> future : futures) {
+      try {
+        results.add(future.get());
+      }
+      catch (ExecutionException e) {
+        throw new IllegalStateException("Script run failed.", e.getCause());
+      }
+    }
+    return results;
+  }
+
+  // 在当前线程上执行一次
+  static RunResult run(Program program, Map<String, Object> inputs, ExecutionBudget budget) {
+    Diagnostics diagnostics = new Diagnostics();
+    OutputSink.Memory output = new OutputSink.Memory();
+    Interpreter interpreter = new Interpreter(diagnostics, false);
+    interpreter.setOutput(output);
+    interpreter.setBudget(budget);
+    for (Map.Entry<String, Object> input : inputs.entrySet()) {
+      interpreter.globals.define(input.getKey(), input.getValue());
+    }
+
+    long start = System.nanoTime();
+    budget.start();
+    LoxMetrics.PhaseTimer timer = LoxMetrics.start(LoxMetrics.Phase.EXECUTE);
+    boolean succeeded = interpreter.interpret(program);
+    timer.stop();
+    long nanos = System.nanoTime() - start;
+    return new RunResult(succeeded, output.contents(), diagnostics.messages(), nanos,
+        budget.allocatedBytes(), interpreter.globals);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+}
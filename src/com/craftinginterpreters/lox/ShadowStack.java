@@ -0,0 +1,56 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// 一个解释器线程的lox调用栈：每帧记录函数名和当前行号。
+// 只由所属线程修改，采样线程读取时可能看到不完全一致的快照，这对采样来说足够了
+class ShadowStack {
+  private static final String ROOT = "<script>";
+
+  private volatile String[] names = new String[64];
+  private volatile int[] lines = new int[64];
+  private volatile int depth = 1;
+
+  ShadowStack() {
+    names[0] = ROOT;
+  }
+
+  void push(String name, int line) {
+    int d = depth;
+    if (d == names.length) {
+      String[] newNames = Arrays.copyOf(names, d * 2);
+      int[] newLines = Arrays.copyOf(lines, d * 2);
+      names = newNames;
+      lines = newLines;
+    }
+    names[d] = name;
+    lines[d] = line;
+    // 写depth发布新帧
+    depth = d + 1;
+  }
+
+  void pop() {
+    depth--;
+  }
+
+  // 更新栈顶帧的当前行
+  void line(int line) {
+    lines[depth - 1] = line;
+  }
+
+  // 把当前栈写成折叠格式的一行（不含计数），例如<script>:3;fib:12;fib:12
+  String fold() {
+    int d = depth;
+    String[] names = this.names;
+    int[] lines = this.lines;
+    d = Math.min(d, Math.min(names.length, lines.length));
+    StringBuilder folded = new StringBuilder();
+    for (int i = 0; i < d; i++) {
+      if (i > 0) {
+        folded.append(';');
+      }
+      folded.append(names[i]).append(':').append(lines[i]);
+    }
+    return folded.toString();
+  }
+}
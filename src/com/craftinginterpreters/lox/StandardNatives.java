@@ -0,0 +1,20 @@
+package com.craftinginterpreters.lox;
+
+// 内置的、不需要访问解释器的本地函数，通过与宿主注册Java函数相同的机制定义
+final class StandardNatives {
+  // clockNanos()的起点，相对于它的纳秒数能被double精确表示
+  private static final long nanoOrigin = System.nanoTime();
+
+  private StandardNatives() {}
+
+  @LoxNative
+  static double clock() {
+    return (double)System.currentTimeMillis() / 1000.0;
+  }
+
+  // 纳秒精度的单调时钟，只适合计算时间差
+  @LoxNative
+  static double clockNanos() {
+    return System.nanoTime() - nanoOrigin;
+  }
+}
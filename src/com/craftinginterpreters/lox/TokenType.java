@@ -20,5 +20,5 @@ enum TokenType{
   // 关键字
   AND, CLASS, ELSE, FALSE, FUN, FOR, IF, NIL, OR,
   PRINT, RETURN, SUPER, THIS, TRUE, VAR, WHILE, EOF,
-  BREAK
+  BREAK, IMPORT
 }
@@ -3,43 +3,153 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.List;
 
 public class lox {
-  private static final Interpreter interpreter = new Interpreter();
-  static boolean hadError = false;
-  static boolean hadRuntimeError = false;
-  static boolean isPrompt = true;
+  private static final String USAGE = "Usage: jlox [--profile[=file]] [--metrics] [--compact] [script]\n"
+      + "       jlox --bench[=function] [--warmup=n] [--iterations=n] [--json=file] [--baseline=file] [--compact] script\n"
+      + "       jlox --check directory";
 
   public static void main(String[] args) throws IOException{
     // args是命令行参数
-    if (args.length > 1) {
-      System.out.println("Usage: jlox [script]");
+    String script = null;
+    // 开启采样分析时折叠栈的输出文件
+    String profile = null;
+    // --bench模式的选项，bench为null时不是基准测试
+    LoxBench bench = null;
+    String function = null;
+    int warmup = -1;
+    int iterations = -1;
+    String json = null;
+    String baseline = null;
+    // 编译成紧凑AST执行
+    boolean compact = false;
+    // --check模式只编译，不执行
+    boolean check = false;
+    for (String arg : args) {
+      if (arg.equals("--profile")) {
+        profile = "profile.folded";
+      } else if (arg.startsWith("--profile=")) {
+        profile = arg.substring("--profile=".length());
+      } else if (arg.equals("--metrics")) {
+        // 必须在LoxMetrics初始化之前设置
+        System.setProperty("lox.metrics", "true");
+      } else if (arg.equals("--bench")) {
+        bench = new LoxBench();
+      } else if (arg.startsWith("--bench=")) {
+        bench = new LoxBench();
+        function = arg.substring("--bench=".length());
+      } else if (arg.startsWith("--warmup=")) {
+        warmup = count(arg.substring("--warmup=".length()), 0);
+      } else if (arg.startsWith("--iterations=")) {
+        iterations = count(arg.substring("--iterations=".length()), 1);
+      } else if (arg.startsWith("--json=")) {
+        json = arg.substring("--json=".length());
+      } else if (arg.startsWith("--baseline=")) {
+        baseline = arg.substring("--baseline=".length());
+      } else if (arg.equals("--check")) {
+        check = true;
+      } else if (arg.equals("--compact")) {
+        compact = true;
+      } else if (arg.startsWith("--") || script != null) {
+        System.out.println(USAGE);
+        System.exit(64);
+      } else {
+        script = arg;
+      }
+    }
+
+    if (check) {
+      if (script == null || bench != null || profile != null || compact) {
+        System.out.println(USAGE);
+        System.exit(64);
+      }
+      System.exit(new LoxCheck().run(script, System.out));
+    }
+
+    if (bench != null) {
+      if (script == null || profile != null) {
+        System.out.println(USAGE);
+        System.exit(64);
+      }
+      bench.function = function;
+      bench.warmup = warmup >= 0 ? warmup : bench.warmup;
+      bench.iterations = iterations >= 0 ? iterations : bench.iterations;
+      bench.json = json;
+      bench.baseline = baseline;
+      bench.compact = compact;
+      System.exit(bench.run(script));
+    } else if (warmup >= 0 || iterations >= 0 || json != null || baseline != null) {
+      System.out.println(USAGE);
       System.exit(64);
-    } else if (args.length == 1){
-      isPrompt = false;
-      runFile(args[0]);
-    } else {
+    }
+
+    if (script != null){
+      runFile(script, profile, compact);
+    } else if (profile == null && !compact) {
       runPrompt();
+    } else {
+      System.out.println(USAGE);
+      System.exit(64);
+    }
+  }
+
+  // 解析次数选项，不合法时退出
+  private static int count(String text, int min) {
+    try {
+      int value = Integer.parseInt(text);
+      if (value >= min) {
+        return value;
+      }
+    }
+    catch (NumberFormatException e) {
+      // 在下面统一报告
     }
+    System.out.println(USAGE);
+    System.exit(64);
+    return min;
   }
 
-  private static void runFile(String path) throws IOException {
+  private static void runFile(String path, String profile, boolean compact) throws IOException {
     byte[] bytes = Files.readAllBytes(Paths.get(path));
-    run(new String(bytes, Charset.defaultCharset()));
+    LoxEngine engine = new LoxEngine();
+    // 脚本中import的相对路径以脚本所在目录为基准
+    engine.setModuleDirectory(Paths.get(path).toAbsolutePath().getParent());
+    Profiler profiler = null;
+    if (profile != null) {
+      profiler = new Profiler();
+      engine.setProfiler(profiler);
+      profiler.start();
+    }
+    String source = new String(bytes, Charset.defaultCharset());
+    engine.execute(compact ? engine.compileCompact(source) : engine.compile(source));
+    engine.close();
+    if (profiler != null) {
+      profiler.stop();
+      try (Writer out = Files.newBufferedWriter(Paths.get(profile))) {
+        profiler.writeFolded(out);
+      }
+      // 汇总表输出到标准错误，不与脚本的输出混在一起
+      profiler.writeTable(new OutputStreamWriter(System.err));
+    }
+    if (LoxMetrics.ENABLED) {
+      System.err.print(LoxMetrics.summary());
+    }
     // 发生错误
-    if (hadError){
+    if (engine.diagnostics().hadError()){
       System.exit(65);
     }
-    if (hadRuntimeError) {
+    if (engine.diagnostics().hadRuntimeError()) {
       System.exit(70);
     }
   }
 
   private static void runPrompt() throws IOException{
+    LoxEngine engine = new LoxEngine(new Diagnostics(System.err), OutputSink.stdout(true), true);
     // 把字节输入流转化为字符输入流
     InputStreamReader input = new InputStreamReader(System.in);
     BufferedReader reader = new BufferedReader(input);
@@ -51,48 +161,13 @@ public class lox {
       if (line == null){
         break;
       }
-      run(line);
+      engine.run(line);
       // 即使用户输入有误，也不终止会话
-      hadError = false;
-    }
-  }
-
-  static void run(String source){
-    Scanner scanner = new Scanner(source);
-    List<Token> tokens = scanner.scanTokens();
-    Parser parser = new Parser(tokens);
-    List<Stmt> statements = parser.parse();
-    if (hadError) {
-      return;
-    }
-    Resolver resolver = new Resolver(interpreter);
-    resolver.resolve(statements);
-    if (hadError) {
-      return;
+      engine.diagnostics().clearError();
     }
-    interpreter.interpret(statements);
-  }
-  // 错误报告函数
-  static void error(int line, String message){
-    report(line, "", message);
-  }
-
-  private static void report(int line, String where, String message){
-    System.err.println("[line " + line + "] Error" + where + ": " + message);
-    hadError = true;
-  }
-
-  static void error(Token token, String message) {
-    if (token.type == TokenType.EOF) {
-      report(token.line, " at end", message);
-    }
-    else {
-      report(token.line, " at '" + token.lexeme + "'", message);
+    engine.close();
+    if (LoxMetrics.ENABLED) {
+      System.err.print(LoxMetrics.summary());
     }
   }
-
-  static void runtimeError(RuntimeError error) {
-    System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-    hadRuntimeError = true;
-  }
 }
@@ -13,9 +13,11 @@ public class GenerateAst {
         }
         String outputDir = args[0];
         defineAst(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Assign   : Token name, Expr value; GlobalCell cell",
+                // 分号之后是不经过构造函数的字段，用于保存运行时的信息：
+                // 带初始值的是final字段，不带的是解释器可以修改的字段
+                "Binary   : Expr left, Token operator, Expr right; BinarySite site = new BinarySite()",
+                "Call     : Expr callee, Token paren, List<Expr> arguments; JavaFunction.Overload target",
                 "Get      : Expr object, Token name",
                 "Grouping : Expr expression",
                 "Literal  : Object value",
@@ -23,9 +25,18 @@ public class GenerateAst {
                 "Set      : Expr object, Token name, Expr value",
                 "This     : Token keyword",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name",
+                "Variable : Token name; GlobalCell cell",
                 "Comma    : List<Expr> commaList",
-                "Conditional : Expr condition, Expr trueBranch, Expr falseBranch"
+                "Conditional : Expr condition, Expr trueBranch, Expr falseBranch",
+                // 以下由Optimizer在变量解析之后生成，original是原来的表达式，类型不符时退回去执行它
+                "LocalIncrement : Token name, int distance, double delta, Expr original",
+                "LocalCompare : Token name, int distance, Token operator, double constant, Expr original",
+                "LocalEquals : Token left, int leftDistance, Token operator, Token right, int rightDistance, Expr original",
+                "FieldIncrement : Token object, int distance, Token name, double delta, Expr original",
+                // 由ScalarReplacer生成，site是构造对象的表达式，变量的值是它时字段保存在隐藏的局部变量中
+                "ScalarNew : Token name, Call original, Stmt.Function initializer, List<String> hidden, List<Integer> sources",
+                "ScalarGet : Token object, int distance, String hidden, ScalarNew site, Expr original",
+                "ScalarSet : Token object, int distance, String hidden, Expr value, ScalarNew site, Expr original"
         ));
 
         defineAst(outputDir, "Stmt", Arrays.asList(
@@ -38,8 +49,9 @@ public class GenerateAst {
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
                 "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body",
-                "Break      : Token keyword"
+                "While      : Token keyword, Expr condition, Stmt body",
+                "Break      : Token keyword",
+                "Import     : Token keyword, Token path; LoxModule module"
         ));
     }
     private static void defineAst(String OutputDir, String baseName, List<String> types) throws IOException{
@@ -56,8 +68,10 @@ public class GenerateAst {
         // AST所定义的类
         for (String type : types){
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] parts = type.split(":")[1].split(";");
+            String fields = parts[0].trim();
+            String extra = parts.length > 1 ? parts[1].trim() : null;
+            defineType(writer, baseName, className, fields, extra);
             // System.out.println(fields);
         }
         // accept()方法
@@ -76,7 +90,8 @@ public class GenerateAst {
         writer.println("  }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList){
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   String extra){
         writer.println("  static class " + className + " extends " + baseName + " {");
         writer.println("    " + className + "(" + fieldList + ") {");
         String[] fields = fieldList.split(", ");
@@ -99,6 +114,9 @@ public class GenerateAst {
         for (String field : fields){
             writer.println("    final " + field + ";");
         }
+        if (extra != null){
+            writer.println("    " + (extra.contains("=") ? "final " : "") + extra + ";");
+        }
         writer.println("  }");
     }
 }